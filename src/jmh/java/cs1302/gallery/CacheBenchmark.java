@@ -0,0 +1,137 @@
+package cs1302.gallery;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures lookups in the {@link ArtworkCache}: a hit in memory, a hit on
+ * disk, and a miss in both. Lookups run on several threads, as they do from
+ * the download pool, so lock contention shows up in the numbers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Dprism.order=sw"})
+public class CacheBenchmark {
+
+    /** Number of entries in each tier. */
+    static final int ENTRIES = 256;
+
+    private Path directory;
+    private ArtworkCache cache;
+    private String[] inMemory;
+    private String[] onDisk;
+
+    /**
+     * Fills a cache whose memory tier holds {@link #ENTRIES} images and whose
+     * disk tier holds as many more byte arrays.
+     *
+     * @throws IOException if the temporary directory cannot be created
+     */
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("artwork-bench");
+        long limit = 64L * 1024 * 1024;
+        cache = new ArtworkCache(limit, new DiskArtworkStore(directory, limit));
+        Image image = new WritableImage(100, 100);
+        byte[] bytes = new byte[4 * 1024];
+        inMemory = new String[ENTRIES];
+        onDisk = new String[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            inMemory[i] = "https://art.example.com/memory/" + i + "/100x100bb.jpg";
+            onDisk[i] = "https://art.example.com/disk/" + i + "/100x100bb.jpg";
+            cache.putImage(inMemory[i], image);
+            cache.putBytes(onDisk[i], bytes);
+        } // for
+    } // setup
+
+    /**
+     * Deletes the disk tier.
+     *
+     * @throws IOException if a file cannot be deleted
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } // try
+    } // tearDown
+
+    /**
+     * Per-thread position in the key arrays, so threads do not all ask for the
+     * same entry.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        /**
+         * Returns the next index to look up.
+         *
+         * @return the index
+         */
+        int next() {
+            next = (next + 1) % ENTRIES;
+            return next;
+        } // next
+    } // Cursor
+
+    /**
+     * Looks up a decoded image that is in memory.
+     *
+     * @param cursor the thread's position
+     * @return the image
+     */
+    @Benchmark
+    public Image memoryHit(Cursor cursor) {
+        return cache.getImage(inMemory[cursor.next()]);
+    } // memoryHit
+
+    /**
+     * Looks up an image that is only on disk: a memory miss, then a file read.
+     *
+     * @param cursor the thread's position
+     * @return the bytes
+     */
+    @Benchmark
+    public byte[] diskHit(Cursor cursor) {
+        String url = onDisk[cursor.next()];
+        cache.getImage(url);
+        return cache.getBytes(url);
+    } // diskHit
+
+    /**
+     * Looks up an image that is in neither tier.
+     *
+     * @param cursor the thread's position
+     * @return {@code null}
+     */
+    @Benchmark
+    public byte[] miss(Cursor cursor) {
+        String url = "https://art.example.com/missing/" + cursor.next() + "/100x100bb.jpg";
+        cache.getImage(url);
+        return cache.getBytes(url);
+    } // miss
+
+} // CacheBenchmark
@@ -0,0 +1,88 @@
+package cs1302.gallery;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javafx.scene.image.Image;
+import javax.imageio.ImageIO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures decoding downloaded artwork into a 100x100 JavaFX {@code Image},
+ * the way {@link ArtworkDownloader} does, with and without smoothing. The
+ * source is a JPEG of the given size, since iTunes serves JPEG artwork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Dprism.order=sw"})
+public class DecodeBenchmark {
+
+    /** Width and height of the source JPEG. */
+    @Param({"100", "600"})
+    int size;
+
+    private byte[] jpeg;
+
+    /**
+     * Encodes a JPEG with gradients and shapes, so it compresses like artwork
+     * rather than like a flat color.
+     *
+     * @throws IOException if the JPEG cannot be encoded
+     */
+    @Setup
+    public void setup() throws IOException {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.ORANGE, size, size, Color.BLUE));
+        g.fillRect(0, 0, size, size);
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < 12; i++) {
+            g.drawOval(i * size / 24, i * size / 24, size - i * size / 12, size - i * size / 12);
+        } // for
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        jpeg = out.toByteArray();
+    } // setup
+
+    /**
+     * Decodes at 100x100 with smoothing, as the gallery does.
+     *
+     * @return the image
+     */
+    @Benchmark
+    public Image decodeSmooth() {
+        return new Image(new ByteArrayInputStream(jpeg), ArtworkDownloader.IMAGE_SIZE,
+            ArtworkDownloader.IMAGE_SIZE, false, true);
+    } // decodeSmooth
+
+    /**
+     * Decodes at 100x100 with nearest-neighbor scaling.
+     *
+     * @return the image
+     */
+    @Benchmark
+    public Image decodeNearest() {
+        return new Image(new ByteArrayInputStream(jpeg), ArtworkDownloader.IMAGE_SIZE,
+            ArtworkDownloader.IMAGE_SIZE, false, false);
+    } // decodeNearest
+
+} // DecodeBenchmark
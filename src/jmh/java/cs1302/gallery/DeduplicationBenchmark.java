@@ -0,0 +1,148 @@
+package cs1302.gallery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the quadratic {@code deleteDuplicates} that {@code ContentLoader}
+ * used to run on every load with the {@link UrlDeduplicator} that replaced it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeduplicationBenchmark {
+
+    /** Number of URLs to de-duplicate. */
+    @Param({"150", "2000"})
+    int urls;
+
+    private String[] all;
+
+    /**
+     * Builds artwork URLs with one duplicate in ten, as search responses have.
+     */
+    @Setup
+    public void setup() {
+        all = new String[urls];
+        for (int i = 0; i < urls; i++) {
+            int art = i % 10 == 9 ? i - 1 : i;
+            // builds a new string each time so equals cannot short-circuit on identity
+            all[i] = new StringBuilder("https://is1-ssl.mzstatic.com/image/thumb/Music/v4/")
+                .append(art).append("/source/100x100bb.jpg").toString();
+        } // for
+    } // setup
+
+    /**
+     * The previous approach, copied here as the baseline.
+     *
+     * @return the distinct URLs
+     */
+    @Benchmark
+    public String[] quadraticBaseline() {
+        return deleteDuplicates(all.clone(), all.length);
+    } // quadraticBaseline
+
+    /**
+     * De-duplicates by exact URL.
+     *
+     * @return the distinct URLs
+     */
+    @Benchmark
+    public List<String> distinctExact() {
+        return UrlDeduplicator.distinct(List.of(all), false);
+    } // distinctExact
+
+    /**
+     * De-duplicates by normalized URL, as paged searches do.
+     *
+     * @return the distinct URLs
+     */
+    @Benchmark
+    public List<String> distinctNormalized() {
+        return UrlDeduplicator.distinct(List.of(all), true);
+    } // distinctNormalized
+
+    /**
+     * Adds URLs one at a time, as pages arrive, and copies out the result.
+     *
+     * @return the distinct URLs
+     */
+    @Benchmark
+    public List<String> incremental() {
+        UrlDeduplicator dedup = new UrlDeduplicator(true, all.length);
+        List<String> fresh = new ArrayList<>(all.length);
+        for (String url : all) {
+            if (dedup.add(url)) {
+                fresh.add(url);
+            } // if
+        } // for
+        return fresh;
+    } // incremental
+
+    /**
+     * A copy of the original {@code ContentLoader.deleteDuplicates}, with the
+     * URL count passed in rather than kept in a field.
+     *
+     * @param urlStrings the URLs
+     * @param numUrls the number of URLs
+     * @return the URLs without duplicates
+     */
+    private static String[] deleteDuplicates(String[] urlStrings, int numUrls) {
+        // do nothing if there are 0 or 1 URLs
+        if (urlStrings.length == 0 || urlStrings.length == 1) {
+            return urlStrings;
+        } // if
+
+        // boolean array to check for duplicates
+        boolean[] delete = new boolean[numUrls];
+        for (int i = 0; i < delete.length; i++) {
+            delete[i] = true;
+        } // for
+
+        // loops through and marks duplicates for deletion
+        for (int i = 0; i < delete.length; i++) {
+            if (delete[i] == true) {
+                // checks all following values
+                for (int j = i + 1; j < delete.length; j++) {
+                    // checks if there are duplicates
+                    if (urlStrings[i].equals(urlStrings[j])) {
+                        // if there is a duplicate, make it false
+                        delete[j] = false;
+                        // decrease number of URLs
+                        numUrls -= 1;
+                    } // if
+                } // for
+            } // if
+        } // for
+
+        String[] newArray = new String[numUrls];
+        int count = 0;
+
+        // loops through and adds strings if boolean is true
+        for (int i = 0; i < delete.length; i++) {
+            // if boolean is true, add string URL to the array
+            if (delete[i] == true) {
+                newArray[count] = urlStrings[i];
+                count += 1;
+            } // if
+        } // for
+
+        return newArray;
+    } // deleteDuplicates
+
+} // DeduplicationBenchmark
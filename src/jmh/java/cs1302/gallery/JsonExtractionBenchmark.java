@@ -0,0 +1,136 @@
+package cs1302.gallery;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares parsing a whole search response into a JSON tree, which is how
+ * artwork URLs used to be extracted, with the streaming
+ * {@link ArtworkUrlExtractor}. Run with {@code -prof gc} to compare allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonExtractionBenchmark {
+
+    /** Number of results in the response. */
+    @Param({"150", "2000"})
+    int results;
+
+    private byte[] response;
+
+    /**
+     * Builds a response that looks like an iTunes Search API answer, with
+     * roughly the same fields per result and one duplicate URL in ten.
+     */
+    @Setup
+    public void setup() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"resultCount\":").append(results).append(",\"results\":[");
+        for (int i = 0; i < results; i++) {
+            if (i > 0) {
+                json.append(',');
+            } // if
+            int art = i % 10 == 9 ? i - 1 : i;
+            json.append("{\"wrapperType\":\"track\",\"kind\":\"song\",")
+                .append("\"artistId\":").append(100000 + i).append(',')
+                .append("\"collectionId\":").append(200000 + i).append(',')
+                .append("\"trackId\":").append(300000 + i).append(',')
+                .append("\"artistName\":\"Artist ").append(i).append("\",")
+                .append("\"collectionName\":\"Album \\u00e9 ").append(i).append("\",")
+                .append("\"trackName\":\"Track ").append(i).append("\",")
+                .append("\"previewUrl\":\"https://audio.example.com/").append(i).append(".m4a\",")
+                .append("\"artworkUrl30\":\"https://art.example.com/").append(art)
+                .append("/30x30bb.jpg\",")
+                .append("\"artworkUrl60\":\"https://art.example.com/").append(art)
+                .append("/60x60bb.jpg\",")
+                .append("\"artworkUrl100\":\"https://art.example.com/").append(art)
+                .append("/100x100bb.jpg\",")
+                .append("\"collectionPrice\":9.99,\"trackPrice\":1.29,")
+                .append("\"releaseDate\":\"2020-01-01T12:00:00Z\",\"trackExplicitness\":\"notExplicit\",")
+                .append("\"discCount\":1,\"discNumber\":1,\"trackCount\":12,\"trackNumber\":3,")
+                .append("\"trackTimeMillis\":215000,\"country\":\"USA\",\"currency\":\"USD\",")
+                .append("\"primaryGenreName\":\"Pop\",\"isStreamable\":true}");
+        } // for
+        json.append("]}");
+        response = json.toString().getBytes(StandardCharsets.UTF_8);
+    } // setup
+
+    /**
+     * The previous approach: an unbuffered reader in the platform charset,
+     * a full JSON tree, then a walk over every result.
+     *
+     * @return the artwork URLs
+     */
+    @Benchmark
+    public List<String> treeParse() {
+        InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(response));
+        JsonObject root = JsonParser.parseReader(reader).getAsJsonObject();
+        JsonArray array = root.getAsJsonArray("results");
+        List<String> urls = new ArrayList<>(array.size());
+        for (JsonElement element : array) {
+            JsonElement artworkUrl100 = element.getAsJsonObject().get("artworkUrl100");
+            if (artworkUrl100 != null && !artworkUrl100.isJsonNull()) {
+                urls.add(artworkUrl100.getAsString());
+            } // if
+        } // for
+        return urls;
+    } // treeParse
+
+    /**
+     * Streams the whole response, collecting every distinct URL.
+     *
+     * @return the artwork URLs
+     * @throws IOException never; the response is in memory
+     */
+    @Benchmark
+    public List<String> streamAll() throws IOException {
+        return ArtworkUrlExtractor.extract(reader(), Integer.MAX_VALUE);
+    } // streamAll
+
+    /**
+     * Streams the response until the gallery capacity is reached.
+     *
+     * @return the artwork URLs
+     * @throws IOException never; the response is in memory
+     */
+    @Benchmark
+    public List<String> streamUntilCapacity() throws IOException {
+        return ArtworkUrlExtractor.extract(reader(), ContentLoader.CAPACITY);
+    } // streamUntilCapacity
+
+    /**
+     * Returns a buffered UTF-8 reader over the response, as used by {@link ItunesSource}.
+     *
+     * @return the reader
+     */
+    private BufferedReader reader() {
+        return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(response),
+            StandardCharsets.UTF_8), ItunesSource.BUFFER_SIZE);
+    } // reader
+
+} // JsonExtractionBenchmark
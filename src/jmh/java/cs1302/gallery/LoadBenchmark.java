@@ -0,0 +1,159 @@
+package cs1302.gallery;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a whole load against a local {@link StubArtworkServer}: the paged
+ * search, de-duplication, and downloading and decoding the artwork that
+ * {@code ContentLoader.loadContent} keeps. Only applying the images to the
+ * scene is left out, since that needs a running JavaFX application. A cold
+ * load starts with empty caches; a warm load repeats a query that is
+ * already cached. The per-host request rate is not limited, so the numbers
+ * measure the pipeline rather than the budget.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Dprism.order=sw",
+    "-Dgallery.http.rate=0", "-Dsun.net.httpserver.nodelay=true"})
+public class LoadBenchmark {
+
+    /** The query every load runs. */
+    static final String TERM = "benchmark";
+
+    /** Latency the stub adds to every response, in milliseconds. */
+    @Param({"0", "20"})
+    long latency;
+
+    private StubArtworkServer stub;
+    private Path directory;
+    private PagedSearch coldSearch;
+    private PagedSearch warmSearch;
+    private ArtworkDownloader warmDownloader;
+    private ArtworkDownloader coldDownloader;
+
+    /**
+     * Starts the stub and builds the warm pipeline, whose caches live for
+     * the whole run, and a cold search, whose cache never returns an entry.
+     *
+     * @throws IOException if the stub cannot be started
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        stub = new StubArtworkServer(0, 2000, latency, 0, 0);
+        stub.start();
+        directory = Files.createTempDirectory("artwork-bench");
+        ArtworkSource source = new ItunesSource(stub.getEndpoint(),
+            ArtworkDownloader.DEFAULT_TIMEOUT, ContentLoader.LIMIT);
+        coldSearch = new PagedSearch(new SearchCache(source, 0, 0));
+        warmSearch = new PagedSearch(new SearchCache(source));
+        warmDownloader = new ArtworkDownloader(new ArtworkCache(64L * 1024 * 1024,
+            new DiskArtworkStore(directory, 0)), source);
+    } // setup
+
+    /**
+     * Gives every load a downloader with empty caches. Its disk tier has no
+     * room, so nothing is written to disk either.
+     */
+    @Setup(Level.Invocation)
+    public void coldCaches() {
+        ArtworkSource source = new ItunesSource(stub.getEndpoint(),
+            ArtworkDownloader.DEFAULT_TIMEOUT, ContentLoader.LIMIT);
+        coldDownloader = new ArtworkDownloader(new ArtworkCache(64L * 1024 * 1024,
+            new DiskArtworkStore(directory, 0)), source);
+    } // coldCaches
+
+    /**
+     * Stops the cold downloader of the last load.
+     */
+    @TearDown(Level.Invocation)
+    public void stopCold() {
+        coldDownloader.shutdown();
+    } // stopCold
+
+    /**
+     * Stops the stub and the warm downloader.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        warmDownloader.shutdown();
+        stub.stop();
+        directory.toFile().delete();
+    } // tearDown
+
+    /**
+     * Loads a query with nothing cached.
+     *
+     * @return the number of images loaded
+     * @throws Exception if the load fails
+     */
+    @Benchmark
+    public int coldLoad() throws Exception {
+        return load(coldSearch, coldDownloader);
+    } // coldLoad
+
+    /**
+     * Loads a query whose pages and images are all cached.
+     *
+     * @return the number of images loaded
+     * @throws Exception if the load fails
+     */
+    @Benchmark
+    public int warmLoad() throws Exception {
+        return load(warmSearch, warmDownloader);
+    } // warmLoad
+
+    /**
+     * Runs a load the way {@code ContentLoader} does: downloads start as soon
+     * as each page arrives, up to the gallery capacity, and the load ends
+     * when every download has finished.
+     *
+     * @param search the paged search
+     * @param downloader the downloader
+     * @return the number of images loaded
+     * @throws IOException if the search fails
+     * @throws InterruptedException if interrupted
+     */
+    private static int load(PagedSearch search, ArtworkDownloader downloader)
+        throws IOException, InterruptedException {
+        List<Future<?>> started = new ArrayList<>();
+        AtomicInteger loaded = new AtomicInteger();
+        AtomicInteger kept = new AtomicInteger();
+        search.fetch(TERM, ContentLoader.MEDIA, ContentLoader.TARGET, page -> {
+            int room = Math.min(page.size(), ContentLoader.CAPACITY - kept.get());
+            if (room > 0) {
+                kept.addAndGet(room);
+                started.addAll(downloader.downloadAll(page.subList(0, room), (index, image) -> {
+                    if (image != null) {
+                        loaded.incrementAndGet();
+                    } // if
+                }));
+            } // if
+        });
+        ArtworkDownloader.await(started);
+        return loaded.get();
+    } // load
+
+} // LoadBenchmark
@@ -0,0 +1,47 @@
+package cs1302.gallery;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the gallery benchmarks the way they are run before a release: every
+ * benchmark in throughput and sample-time mode, so that both operations per
+ * second and latency percentiles are reported, with the GC profiler for the
+ * allocation rate. Results are also written as JSON so runs can be compared.
+ */
+public class ReleaseBenchmarks {
+
+    /** Where the results are written. */
+    static final String RESULTS = "target/jmh-result.json";
+
+    /**
+     * Prevents instantiation; this class only has a main method.
+     */
+    private ReleaseBenchmarks() {
+    } // ReleaseBenchmarks
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args an optional regular expression selecting the benchmarks to run
+     * @throws RunnerException if a benchmark fails
+     */
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "cs1302\\.gallery\\..*Benchmark";
+        Options options = new OptionsBuilder()
+            .include(include)
+            .mode(Mode.Throughput)
+            .mode(Mode.SampleTime)
+            .addProfiler(GCProfiler.class)
+            .resultFormat(ResultFormatType.JSON)
+            .result(RESULTS)
+            .build();
+        new Runner(options).run();
+    } // main
+
+} // ReleaseBenchmarks
@@ -0,0 +1,249 @@
+package cs1302.gallery;
+
+import javafx.scene.image.Image;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@code ArtworkCache} sits in front of artwork downloads. It has three
+ * tiers: an in-memory least recently used cache of decoded images bounded by
+ * their pixel size in bytes, a {@link CompressedArtworkStore} of raw bytes
+ * kept off the heap, and a {@link DiskArtworkStore} of the raw downloaded
+ * bytes that stays warm across restarts. All tiers are keyed by artwork URL.
+ * Decoded images can be dropped at any time, such as when the heap is nearly
+ * full, because the raw bytes let them be decoded again on demand. The cache
+ * counts hits, misses and evictions of its tiers.
+ */
+public class ArtworkCache {
+
+    /** Default in-memory budget in megabytes; set with {@code -Dgallery.cache.memoryMb}. */
+    static final int DEFAULT_MEMORY_MB = Integer.getInteger("gallery.cache.memoryMb", 64);
+
+    /** Largest fraction of the maximum heap that decoded images may take by default. */
+    static final double HEAP_SHARE = 0.25;
+
+    /** Default on-disk budget in megabytes; set with {@code -Dgallery.cache.diskMb}. */
+    static final int DEFAULT_DISK_MB = Integer.getInteger("gallery.cache.diskMb", 256);
+
+    private final LinkedHashMap<String, Image> images;
+    private final long maxMemoryBytes;
+    private long memoryBytes;
+    private final CompressedArtworkStore compressed;
+    private final DiskArtworkStore disk;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong compressedHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong memoryEvictions = new AtomicLong();
+
+    /**
+     * Constructs an {@code ArtworkCache} with the default budgets and
+     * the default disk directory. Decoded images never take more than a
+     * quarter of the maximum heap, so a small {@code -Xmx} shrinks the
+     * decoded tier instead of running out of memory.
+     */
+    public ArtworkCache() {
+        this(Math.min(DEFAULT_MEMORY_MB * 1024L * 1024L,
+            (long) (Runtime.getRuntime().maxMemory() * HEAP_SHARE)),
+            new CompressedArtworkStore(CompressedArtworkStore.DEFAULT_MB * 1024L * 1024L),
+            new DiskArtworkStore(DiskArtworkStore.defaultDirectory(),
+                DEFAULT_DISK_MB * 1024L * 1024L));
+    } // ArtworkCache
+
+    /**
+     * Constructs an {@code ArtworkCache} with the given memory budget
+     * in front of the given disk store, without an off-heap tier.
+     *
+     * @param maxMemoryBytes the maximum number of decoded pixel bytes to keep in memory
+     * @param disk the on-disk store of raw artwork bytes
+     */
+    public ArtworkCache(long maxMemoryBytes, DiskArtworkStore disk) {
+        this(maxMemoryBytes, new CompressedArtworkStore(0), disk);
+    } // ArtworkCache
+
+    /**
+     * Constructs an {@code ArtworkCache} with the given memory budget
+     * in front of the given stores.
+     *
+     * @param maxMemoryBytes the maximum number of decoded pixel bytes to keep in memory
+     * @param compressed the off-heap store of raw artwork bytes
+     * @param disk the on-disk store of raw artwork bytes
+     */
+    public ArtworkCache(long maxMemoryBytes, CompressedArtworkStore compressed,
+        DiskArtworkStore disk) {
+        this.images = new LinkedHashMap<>(16, 0.75f, true);
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.compressed = compressed;
+        this.disk = disk;
+    } // ArtworkCache
+
+    /**
+     * Returns the decoded image for a URL from memory.
+     *
+     * @param url the artwork URL
+     * @return the cached image, or {@code null} if it is not in memory
+     */
+    public Image getImage(String url) {
+        Image image;
+        synchronized (images) {
+            image = images.get(url);
+        } // synchronized
+        if (image != null) {
+            memoryHits.incrementAndGet();
+        } // if
+        return image;
+    } // getImage
+
+    /**
+     * Returns the raw bytes for a URL from the off-heap store, or else from
+     * disk. Bytes found on disk are kept off the heap for next time. Callers
+     * check memory first with {@link #getImage}, so a miss here counts as a
+     * miss of every tier.
+     *
+     * @param url the artwork URL
+     * @return the stored bytes, or {@code null} if they are not stored
+     */
+    public byte[] getBytes(String url) {
+        byte[] bytes = compressed.get(url);
+        if (bytes != null) {
+            compressedHits.incrementAndGet();
+            return bytes;
+        } // if
+        bytes = disk.get(url);
+        if (bytes != null) {
+            diskHits.incrementAndGet();
+            compressed.put(url, bytes);
+        } else {
+            misses.incrementAndGet();
+        } // if
+        return bytes;
+    } // getBytes
+
+    /**
+     * Stores a decoded image in memory, evicting the least recently used
+     * images if the memory budget is exceeded.
+     *
+     * @param url the artwork URL
+     * @param image the decoded image
+     */
+    public void putImage(String url, Image image) {
+        long size = sizeOf(image);
+        if (size > maxMemoryBytes) {
+            return;
+        } // if
+        synchronized (images) {
+            Image old = images.put(url, image);
+            if (old != null) {
+                memoryBytes -= sizeOf(old);
+            } // if
+            memoryBytes += size;
+
+            // drops least recently used images until the cache fits
+            Iterator<Image> eldest = images.values().iterator();
+            while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+                memoryBytes -= sizeOf(eldest.next());
+                eldest.remove();
+                memoryEvictions.incrementAndGet();
+            } // while
+        } // synchronized
+    } // putImage
+
+    /**
+     * Stores the raw bytes of a download off the heap and on disk.
+     *
+     * @param url the artwork URL
+     * @param bytes the raw artwork bytes
+     */
+    public void putBytes(String url, byte[] bytes) {
+        compressed.put(url, bytes);
+        disk.put(url, bytes);
+    } // putBytes
+
+    /**
+     * Drops every decoded image from memory. Images still on screen stay
+     * alive through their views; the rest are decoded again from their raw
+     * bytes when next needed. Safe to call from any thread.
+     */
+    public void release() {
+        synchronized (images) {
+            memoryEvictions.addAndGet(images.size());
+            images.clear();
+            memoryBytes = 0;
+        } // synchronized
+    } // release
+
+    /**
+     * Saves the disk index so the next start sees the latest recency order.
+     */
+    public void flush() {
+        disk.flush();
+    } // flush
+
+    /**
+     * Returns the number of lookups answered from memory.
+     *
+     * @return the memory hit count
+     */
+    public long getMemoryHits() {
+        return memoryHits.get();
+    } // getMemoryHits
+
+    /**
+     * Returns the number of lookups answered from the off-heap store.
+     *
+     * @return the off-heap hit count
+     */
+    public long getCompressedHits() {
+        return compressedHits.get();
+    } // getCompressedHits
+
+    /**
+     * Returns the number of lookups answered from disk.
+     *
+     * @return the disk hit count
+     */
+    public long getDiskHits() {
+        return diskHits.get();
+    } // getDiskHits
+
+    /**
+     * Returns the number of lookups that missed both tiers.
+     *
+     * @return the miss count
+     */
+    public long getMisses() {
+        return misses.get();
+    } // getMisses
+
+    /**
+     * Returns the number of images dropped from memory to stay within budget.
+     *
+     * @return the memory eviction count
+     */
+    public long getMemoryEvictions() {
+        return memoryEvictions.get();
+    } // getMemoryEvictions
+
+    /**
+     * Returns the number of files deleted from disk to stay within budget.
+     *
+     * @return the disk eviction count
+     */
+    public long getDiskEvictions() {
+        return disk.getEvictions();
+    } // getDiskEvictions
+
+    /**
+     * Returns the number of bytes taken by the pixels of a decoded image,
+     * assuming four bytes per pixel.
+     *
+     * @param image the decoded image
+     * @return its approximate size in bytes
+     */
+    static long sizeOf(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4L;
+    } // sizeOf
+
+} // ArtworkCache
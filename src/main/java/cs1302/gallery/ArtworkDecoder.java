@@ -0,0 +1,83 @@
+package cs1302.gallery;
+
+import javafx.scene.image.Image;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@code ArtworkDecoder} decodes and scales downloaded artwork on its own
+ * pool of daemon threads. Decoding is CPU-bound while downloading waits on the
+ * network, so keeping them apart lets decoding use every core without taking
+ * threads from downloads, and keeps both off the JavaFX Application Thread.
+ * The images it produces are fully decoded and can be shown right away.
+ */
+public class ArtworkDecoder {
+
+    /** Default number of decoding threads; set with {@code -Dgallery.decoders}. */
+    static final int DEFAULT_THREADS = Integer.getInteger("gallery.decoders",
+        Runtime.getRuntime().availableProcessors());
+
+    private final ExecutorService pool;
+
+    /**
+     * Constructs an {@code ArtworkDecoder} with the default number of threads.
+     */
+    public ArtworkDecoder() {
+        this(DEFAULT_THREADS);
+    } // ArtworkDecoder
+
+    /**
+     * Constructs an {@code ArtworkDecoder}.
+     *
+     * @param threads the number of images decoded at the same time
+     */
+    public ArtworkDecoder(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(Math.max(1, threads), target -> {
+            Thread t = new Thread(target, "artwork-decode-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    } // ArtworkDecoder
+
+    /**
+     * Runs a decoding task on the decoding threads.
+     *
+     * @param task the task
+     * @return the pending task
+     */
+    public Future<?> submit(Runnable task) {
+        return pool.submit(task);
+    } // submit
+
+    /**
+     * Decodes an image and scales it smoothly to a square on the calling
+     * thread. Failures are counted in the {@link GalleryMetrics}.
+     *
+     * @param bytes the encoded image
+     * @param size the width and height of the decoded image
+     * @return the decoded image, or {@code null} if the bytes are not a valid image
+     */
+    public static Image decode(byte[] bytes, double size) {
+        GalleryMetrics metrics = GalleryMetrics.global();
+        long decoding = metrics.start();
+        Image image = new Image(new ByteArrayInputStream(bytes), size, size, false, true);
+        metrics.stop(GalleryMetrics.Phase.DECODE, decoding);
+        if (image.isError()) {
+            metrics.increment(GalleryMetrics.Counter.DECODE_FAILURES);
+            return null;
+        } // if
+        return image;
+    } // decode
+
+    /**
+     * Stops the decoding threads, abandoning any images not yet decoded.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    } // shutdown
+
+} // ArtworkDecoder
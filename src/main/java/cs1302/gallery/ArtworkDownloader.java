@@ -0,0 +1,454 @@
+package cs1302.gallery;
+
+import javafx.scene.image.Image;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * An {@code ArtworkDownloader} downloads artwork images in parallel. It
+ * uses a fixed pool of daemon worker threads so that no more than a
+ * configured number of downloads are in flight at once. The bytes of each
+ * image are read from an {@link ArtworkSource}, whose requests use timeouts
+ * so a single slow host cannot hang a load.
+ * Downloads go through an {@link ArtworkCache}, so artwork that was seen
+ * before is served from memory or disk without any network I/O. Once its
+ * bytes are read, an image is decoded by an {@link ArtworkDecoder}, which
+ * has threads of its own, so slow hosts and slow decodes do not hold up
+ * each other. Artwork whose bytes match an image decoded earlier under
+ * another URL shares that image; see {@link ArtworkFingerprints}.
+ * Every download has a {@link RequestScheduler.Priority}: waiting downloads
+ * start most urgent first, and their requests carry the same priority.
+ */
+public class ArtworkDownloader {
+
+    /** Default number of concurrent downloads; set with {@code -Dgallery.downloads}. */
+    static final int DEFAULT_CONCURRENCY = Integer.getInteger("gallery.downloads", 8);
+
+    /** Default per-request timeout in milliseconds; set with {@code -Dgallery.timeout}. */
+    static final int DEFAULT_TIMEOUT = Integer.getInteger("gallery.timeout", 10000);
+
+    /** Width and height of an artwork tile, and of an image decoded without a size. */
+    static final double IMAGE_SIZE = 100;
+
+    private final ExecutorService pool;
+    private final ArtworkDecoder decoder;
+    private final ArtworkSource source;
+    private final ArtworkCache cache;
+    private final ArtworkFingerprints fingerprints;
+    private volatile LongConsumer byteListener = count -> { };
+
+    /**
+     * Constructs an {@code ArtworkDownloader} using the default concurrency
+     * limit.
+     *
+     * @param cache the cache consulted before every download
+     * @param source the source the bytes of uncached images are read from
+     */
+    public ArtworkDownloader(ArtworkCache cache, ArtworkSource source) {
+        this(cache, source, DEFAULT_CONCURRENCY);
+    } // ArtworkDownloader
+
+    /**
+     * Constructs an {@code ArtworkDownloader} that runs at most
+     * {@code concurrency} downloads at the same time.
+     *
+     * @param cache the cache consulted before every download
+     * @param source the source the bytes of uncached images are read from
+     * @param concurrency the maximum number of downloads in flight
+     */
+    public ArtworkDownloader(ArtworkCache cache, ArtworkSource source, int concurrency) {
+        this.cache = cache;
+        this.source = source;
+        AtomicInteger threadCount = new AtomicInteger();
+        // every task is a Prioritized, so the queue hands out the most urgent first
+        this.pool = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<>(), target -> {
+                Thread t = new Thread(target, "artwork-download-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        this.decoder = new ArtworkDecoder();
+        this.fingerprints = new ArtworkFingerprints();
+    } // ArtworkDownloader
+
+    /**
+     * Submits the given URLs for download in order. Earlier URLs
+     * are started first, so callers should put the images they need soonest
+     * at the front. The callback is invoked from a decoding thread once for every
+     * URL with its index and the downloaded image, or {@code null} if the
+     * download failed. It is not invoked for downloads that were cancelled.
+     *
+     * @param urls the artwork URLs to download
+     * @param onLoaded callback for each finished download
+     * @return the pending downloads, in the same order as the URLs
+     */
+    public List<Future<?>> downloadAll(List<String> urls, BiConsumer<Integer, Image> onLoaded) {
+        return downloadAll(urls, IMAGE_SIZE, onLoaded);
+    } // downloadAll
+
+    /**
+     * Submits the given URLs for download in order like
+     * {@link #downloadAll(List, BiConsumer)}, decoding each image at the
+     * given size.
+     *
+     * @param urls the artwork URLs to download
+     * @param size the width and height each image is decoded at
+     * @param onLoaded callback for each finished download
+     * @return the pending downloads, in the same order as the URLs
+     */
+    public List<Future<?>> downloadAll(List<String> urls, double size,
+        BiConsumer<Integer, Image> onLoaded) {
+        return downloadAll(urls, size, RequestScheduler.Priority.VISIBLE, onLoaded);
+    } // downloadAll
+
+    /**
+     * Submits the given URLs for download in order like
+     * {@link #downloadAll(List, double, BiConsumer)}, with the given priority.
+     *
+     * @param urls the artwork URLs to download
+     * @param size the width and height each image is decoded at
+     * @param priority the priority of the downloads
+     * @param onLoaded callback for each finished download
+     * @return the pending downloads, in the same order as the URLs
+     */
+    public List<Future<?>> downloadAll(List<String> urls, double size,
+        RequestScheduler.Priority priority, BiConsumer<Integer, Image> onLoaded) {
+        List<Future<?>> downloads = new ArrayList<>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            final int index = i;
+            downloads.add(downloadOne(urls.get(i), size, priority,
+                artImage -> onLoaded.accept(index, artImage)));
+        } // for
+        return downloads;
+    } // downloadAll
+
+    /**
+     * Submits a single URL for download. Its bytes are read on a download
+     * thread and then decoded on a decoding thread, which invokes the callback
+     * with the image, or {@code null} if the download failed. An image already
+     * in memory is handed to the callback from the download thread. The
+     * callback is not invoked if the download was cancelled, and cancelling
+     * stops whichever stage is running.
+     *
+     * @param url the artwork URL to download
+     * @param onLoaded callback for the finished download
+     * @return the pending download, which completes after the callback
+     */
+    public Future<?> downloadOne(String url, Consumer<Image> onLoaded) {
+        return downloadOne(url, IMAGE_SIZE, onLoaded);
+    } // downloadOne
+
+    /**
+     * Submits a single URL for download like
+     * {@link #downloadOne(String, Consumer)}, decoding the image at the given
+     * size. Images are cached by URL, so each size should have its own URL.
+     *
+     * @param url the artwork URL to download
+     * @param size the width and height the image is decoded at
+     * @param onLoaded callback for the finished download
+     * @return the pending download, which completes after the callback
+     */
+    public Future<?> downloadOne(String url, double size, Consumer<Image> onLoaded) {
+        return downloadOne(url, size, RequestScheduler.Priority.VISIBLE, onLoaded);
+    } // downloadOne
+
+    /**
+     * Submits a single URL for download like
+     * {@link #downloadOne(String, double, Consumer)}, with the given priority.
+     * A download waits behind more urgent ones that have not started yet.
+     *
+     * @param url the artwork URL to download
+     * @param size the width and height the image is decoded at
+     * @param priority the priority of the download
+     * @param onLoaded callback for the finished download
+     * @return the pending download, which completes after the callback
+     */
+    public Future<?> downloadOne(String url, double size, RequestScheduler.Priority priority,
+        Consumer<Image> onLoaded) {
+        Pending pending = new Pending();
+        // the stage is set before the task can run, so it cannot overwrite the decode stage
+        Prioritized reading = new Prioritized(() -> {
+            try {
+                Image artImage = cache.getImage(url);
+                if (artImage != null) {
+                    GalleryMetrics.global().increment(GalleryMetrics.Counter.MEMORY_HITS);
+                    deliver(pending, onLoaded, artImage);
+                    return;
+                } // if
+                byte[] cachedBytes = cache.getBytes(url);
+                boolean downloaded = cachedBytes == null;
+                byte[] bytes = downloaded ? fetch(url) : cachedBytes;
+                if (bytes == null || pending.isDone()) {
+                    deliver(pending, onLoaded, null);
+                    return;
+                } // if
+                pending.stage = decoder.submit(() ->
+                    deliver(pending, onLoaded, decode(url, bytes, downloaded, size)));
+            } catch (RuntimeException e) {
+                pending.completeExceptionally(e);
+            } // try
+        }, priority);
+        pending.stage = reading;
+        pool.execute(reading);
+        return pending;
+    } // downloadOne
+
+    /**
+     * Hands an image to a callback unless the download was cancelled, then
+     * completes the download.
+     *
+     * @param pending the download
+     * @param onLoaded the callback
+     * @param artImage the image, or {@code null} if the download failed
+     */
+    private static void deliver(Pending pending, Consumer<Image> onLoaded, Image artImage) {
+        try {
+            // skips the callback if the download was cancelled meanwhile
+            if (!pending.isDone() && !Thread.currentThread().isInterrupted()) {
+                onLoaded.accept(artImage);
+            } // if
+        } finally {
+            pending.complete(null);
+        } // try
+    } // deliver
+
+    /**
+     * A download in progress. Cancelling it cancels the stage that is
+     * currently running, reading or decoding.
+     */
+    private static class Pending extends CompletableFuture<Void> {
+
+        volatile Future<?> stage;
+
+        /**
+         * Cancels the download and its current stage.
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Future<?> current = stage;
+            if (current != null) {
+                current.cancel(mayInterruptIfRunning);
+            } // if
+            return cancelled;
+        } // cancel
+    } // Pending
+
+    /**
+     * A task of the download pool. Tasks are ordered by priority, then by
+     * when they were submitted, and run with their priority, so the requests
+     * they send have it too.
+     */
+    private static class Prioritized extends FutureTask<Void> implements Comparable<Prioritized> {
+
+        private static final AtomicLong SUBMITTED = new AtomicLong();
+
+        final RequestScheduler.Priority priority;
+        final long sequence;
+
+        /**
+         * Constructs a {@code Prioritized} task.
+         *
+         * @param task the work to run
+         * @param priority the priority of the work
+         */
+        Prioritized(Runnable task, RequestScheduler.Priority priority) {
+            super(task, null);
+            this.priority = priority;
+            this.sequence = SUBMITTED.getAndIncrement();
+        } // Prioritized
+
+        /**
+         * Runs the task with its priority as the priority of the thread.
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            RequestScheduler.runAs(priority, super::run);
+        } // run
+
+        /**
+         * Orders tasks by priority, most urgent first, then by submission.
+         *
+         * @param other another task
+         * @return a negative number if this task runs first, a positive one if the other does
+         */
+        @Override
+        public int compareTo(Prioritized other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        } // compareTo
+    } // Prioritized
+
+    /**
+     * Returns the image for a URL if it is already decoded in memory.
+     *
+     * @param url the artwork URL
+     * @return the cached image, or {@code null}
+     */
+    public Image cached(String url) {
+        return cache.getImage(url);
+    } // cached
+
+    /**
+     * Returns the fingerprints of the images this downloader decoded, which
+     * tell whether two images look the same.
+     *
+     * @return the fingerprints
+     */
+    public ArtworkFingerprints getFingerprints() {
+        return fingerprints;
+    } // getFingerprints
+
+    /**
+     * Sets the listener told about the number of bytes of every network
+     * download. It is called from the worker threads.
+     *
+     * @param byteListener the listener
+     */
+    public void setByteListener(LongConsumer byteListener) {
+        this.byteListener = byteListener;
+    } // setByteListener
+
+    /**
+     * Downloads and decodes a single artwork image on the calling thread.
+     * The memory cache is checked first, then the disk cache, and only then
+     * the network. Freshly downloaded bytes are written to the disk cache.
+     *
+     * @param url the artwork URL
+     * @return the image scaled to 100x100, or {@code null} if it could not be loaded
+     */
+    public Image download(String url) {
+        Image artImage = cache.getImage(url);
+        if (artImage != null) {
+            GalleryMetrics.global().increment(GalleryMetrics.Counter.MEMORY_HITS);
+            return artImage;
+        } // if
+        byte[] cachedBytes = cache.getBytes(url);
+        boolean downloaded = cachedBytes == null;
+        byte[] bytes = downloaded ? fetch(url) : cachedBytes;
+        return bytes == null ? null : decode(url, bytes, downloaded, IMAGE_SIZE);
+    } // download
+
+    /**
+     * Reads the bytes of an image from the source, counting the outcome.
+     * A disk cache hit is counted by the caller not calling this.
+     *
+     * @param url the artwork URL
+     * @return the bytes, or {@code null} if they could not be read
+     */
+    private byte[] fetch(String url) {
+        GalleryMetrics metrics = GalleryMetrics.global();
+        long fetching = metrics.start();
+        byte[] bytes;
+        try {
+            bytes = source.fetch(url);
+        } catch (IOException e) {
+            metrics.increment(GalleryMetrics.Counter.DOWNLOAD_FAILURES);
+            return null;
+        } // try
+        metrics.stop(GalleryMetrics.Phase.DOWNLOAD, fetching);
+        metrics.increment(GalleryMetrics.Counter.NETWORK_FETCHES);
+        metrics.add(GalleryMetrics.Counter.BYTES_DOWNLOADED, bytes.length);
+        byteListener.accept(bytes.length);
+        return bytes;
+    } // fetch
+
+    /**
+     * Decodes the bytes of an image and caches the result. Bytes identical
+     * to those of an image still in use are not decoded again; that image is
+     * shared instead. Bytes that were just downloaded are only stored once
+     * they decoded, and the write is left to a download thread, since it is
+     * I/O. The fingerprint of the image is computed here, off the JavaFX
+     * Application Thread.
+     *
+     * @param url the artwork URL
+     * @param bytes the encoded image
+     * @param downloaded whether the bytes came from the network rather than a cache
+     * @param size the width and height to decode at
+     * @return the scaled image, or {@code null} if it could not be decoded
+     */
+    private Image decode(String url, byte[] bytes, boolean downloaded, double size) {
+        if (!downloaded) {
+            GalleryMetrics.global().increment(GalleryMetrics.Counter.DISK_HITS);
+        } // if
+        String key = ArtworkFingerprints.contentKey(bytes, size);
+        Image artImage = fingerprints.shared(key);
+        if (artImage != null) {
+            GalleryMetrics.global().increment(GalleryMetrics.Counter.DUPLICATES_SHARED);
+        } else {
+            artImage = ArtworkDecoder.decode(bytes, size);
+            if (artImage == null) {
+                return null;
+            } // if
+            fingerprints.share(key, artImage);
+        } // if
+        fingerprints.hash(artImage);
+        if (downloaded) {
+            try {
+                pool.execute(new Prioritized(() -> cache.putBytes(url, bytes),
+                    RequestScheduler.Priority.BACKGROUND));
+            } catch (RejectedExecutionException e) {
+                // shutting down; the bytes are only a cache
+            } // try
+        } // if
+        cache.putImage(url, artImage);
+        return artImage;
+    } // decode
+
+    /**
+     * Waits until every given download has finished or been cancelled.
+     *
+     * @param downloads the downloads to wait for
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public static void await(List<Future<?>> downloads) throws InterruptedException {
+        for (Future<?> download : downloads) {
+            try {
+                download.get();
+            } catch (CancellationException | ExecutionException e) {
+                // a cancelled or failed download counts as finished
+            } // try
+        } // for
+    } // await
+
+    /**
+     * Cancels every given download that has not finished yet.
+     *
+     * @param downloads the downloads to cancel
+     */
+    public static void cancel(List<Future<?>> downloads) {
+        for (Future<?> download : downloads) {
+            download.cancel(true);
+        } // for
+    } // cancel
+
+    /**
+     * Stops the download and decoding threads, cancelling any downloads
+     * still running.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+        decoder.shutdown();
+    } // shutdown
+
+} // ArtworkDownloader
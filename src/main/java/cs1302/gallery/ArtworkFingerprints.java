@@ -0,0 +1,174 @@
+package cs1302.gallery;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import java.lang.ref.WeakReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * {@code ArtworkFingerprints} recognizes artwork that is the same even though
+ * its URLs differ, which happens often since the same cover is used by many
+ * tracks. It works at two levels. Downloads whose bytes are identical, found
+ * by a SHA-256 digest, share a single decoded image, so the repeat costs no
+ * decoding and no extra memory. Images that look the same, such as one cover
+ * encoded twice, are found by a difference hash: a 64-bit fingerprint of the
+ * brightness gradients of a tiny grayscale copy, which barely changes with
+ * scaling and compression. Images whose fingerprints differ in only a few
+ * bits are treated as duplicates, so they need not be shown side by side.
+ */
+public class ArtworkFingerprints {
+
+    /** Bits matching fingerprints may differ by; set with {@code -Dgallery.dedup.distance}. */
+    static final int DISTANCE = Integer.getInteger("gallery.dedup.distance", 4);
+
+    /** Number of digests remembered for sharing decoded images. */
+    static final int MAX_SHARED = 1024;
+
+    private final LinkedHashMap<String, WeakReference<Image>> byContent;
+    private final Map<Image, Long> hashes;
+
+    /**
+     * Constructs an empty {@code ArtworkFingerprints}.
+     */
+    public ArtworkFingerprints() {
+        this.byContent = new LinkedHashMap<>(16, 0.75f, true);
+        this.hashes = new WeakHashMap<>();
+    } // ArtworkFingerprints
+
+    /**
+     * Returns the decoded image already made from the same bytes at the same
+     * size, if it is still in use.
+     *
+     * @param key the key of the bytes and size, from {@link #contentKey}
+     * @return the shared image, or {@code null} if there is none
+     */
+    public synchronized Image shared(String key) {
+        WeakReference<Image> ref = byContent.get(key);
+        return ref != null ? ref.get() : null;
+    } // shared
+
+    /**
+     * Offers a decoded image for sharing with later downloads of the same
+     * bytes. Only a weak reference is kept, so sharing never keeps an image
+     * in memory.
+     *
+     * @param key the key of the bytes and size, from {@link #contentKey}
+     * @param image the decoded image
+     */
+    public synchronized void share(String key, Image image) {
+        byContent.put(key, new WeakReference<>(image));
+        // forgets the least recently used digests
+        Iterator<WeakReference<Image>> eldest = byContent.values().iterator();
+        while (byContent.size() > MAX_SHARED && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        } // while
+    } // share
+
+    /**
+     * Returns whether two images look the same. An image always matches
+     * itself.
+     *
+     * @param a an image
+     * @param b another image
+     * @return whether their fingerprints differ in at most {@link #DISTANCE} bits
+     */
+    public boolean similar(Image a, Image b) {
+        if (a == b) {
+            return true;
+        } // if
+        return Long.bitCount(hash(a) ^ hash(b)) <= DISTANCE;
+    } // similar
+
+    /**
+     * Returns the difference hash of an image, computing it the first time.
+     * The image is shrunk to 9 by 8 gray levels by averaging, and each bit
+     * tells whether a cell is brighter than its right neighbour.
+     *
+     * @param image a loaded image
+     * @return the 64-bit fingerprint
+     */
+    public long hash(Image image) {
+        synchronized (this) {
+            Long known = hashes.get(image);
+            if (known != null) {
+                return known;
+            } // if
+        } // synchronized
+        PixelReader reader = image.getPixelReader();
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        long hash = 0;
+        if (reader != null && width > 0 && height > 0) {
+            int[] argb = new int[width * height];
+            reader.getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), argb, 0,
+                width);
+            // sums the gray levels of each cell of a 9 by 8 grid
+            long[] sums = new long[72];
+            long[] counts = new long[72];
+            for (int y = 0; y < height; y++) {
+                int row = y * 8 / height * 9;
+                for (int x = 0; x < width; x++) {
+                    int cell = row + x * 9 / width;
+                    sums[cell] += gray(argb[y * width + x]);
+                    counts[cell]++;
+                } // for
+            } // for
+            for (int y = 0; y < 8; y++) {
+                for (int x = 0; x < 8; x++) {
+                    int left = y * 9 + x;
+                    // compares averages without dividing: a/b > c/d when a*d > c*b
+                    boolean brighter = sums[left] * Math.max(1, counts[left + 1])
+                        > sums[left + 1] * Math.max(1, counts[left]);
+                    hash = hash << 1 | (brighter ? 1 : 0);
+                } // for
+            } // for
+        } // if
+        synchronized (this) {
+            hashes.put(image, hash);
+        } // synchronized
+        return hash;
+    } // hash
+
+    /**
+     * Returns the key under which decoded images of some bytes are shared.
+     *
+     * @param bytes the encoded image
+     * @param size the width and height the image is decoded at
+     * @return the hex SHA-256 digest of the bytes and the size
+     */
+    static String contentKey(byte[] bytes, double size) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder key = new StringBuilder(digest.length * 2 + 8);
+            for (byte b : digest) {
+                key.append(Character.forDigit(b >> 4 & 0xf, 16))
+                    .append(Character.forDigit(b & 0xf, 16));
+            } // for
+            return key.append('@').append((int) size).toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        } // try
+    } // contentKey
+
+    /**
+     * Returns the brightness of a pixel.
+     *
+     * @param argb the pixel
+     * @return its gray level, from 0 to 255
+     */
+    private static int gray(int argb) {
+        int r = argb >> 16 & 0xff;
+        int g = argb >> 8 & 0xff;
+        int b = argb & 0xff;
+        return (r * 299 + g * 587 + b * 114) / 1000;
+    } // gray
+
+} // ArtworkFingerprints
@@ -0,0 +1,280 @@
+package cs1302.gallery;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@code ArtworkPack} is a single file holding the tiles last shown for a
+ * few recent queries, so the gallery can show a full wall at startup before
+ * any search or download. Tiles are stored as ready-to-use pixels at the size
+ * they were displayed, so showing them needs no decoding: the file is mapped
+ * into memory and each tile's pixels are copied straight into an image.
+ *
+ * <p>The file starts with a magic number and the length of its index. The
+ * index lists the walls, most recent first: each has its normalized query
+ * and its tiles, and each tile has its URL, size and the offset of its pixels
+ * after the index. Pixels are premultiplied BGRA, four bytes per pixel. A
+ * new wall is written together with the walls kept from the old file into a
+ * temporary file that then replaces the old one, so a reader always sees a
+ * complete file.
+ */
+public class ArtworkPack {
+
+    /** The first four bytes of a pack file: "GPK1". */
+    static final int MAGIC = 0x47504b31;
+
+    /** Number of queries whose walls are kept; set with {@code -Dgallery.pack.queries}. */
+    static final int MAX_WALLS = Integer.getInteger("gallery.pack.queries", 4);
+
+    /** Name of the pack file inside the artwork cache directory. */
+    static final String FILE_NAME = "wall.pack";
+
+    private final Path file;
+
+    /**
+     * A tile of a wall: its artwork URL and its pixels.
+     */
+    public static class Tile {
+        final String url;
+        final int width;
+        final int height;
+        final ByteBuffer pixels;
+
+        /**
+         * Constructs a {@code Tile}.
+         *
+         * @param url the artwork URL, as found by the search
+         * @param width the width in pixels
+         * @param height the height in pixels
+         * @param pixels the premultiplied BGRA pixels, row after row
+         */
+        Tile(String url, int width, int height, ByteBuffer pixels) {
+            this.url = url;
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        } // Tile
+
+        /**
+         * Captures the pixels of a loaded image.
+         *
+         * @param url the artwork URL, as found by the search
+         * @param image the loaded image
+         * @return the tile
+         */
+        static Tile of(String url, Image image) {
+            int width = (int) image.getWidth();
+            int height = (int) image.getHeight();
+            ByteBuffer pixels = ByteBuffer.allocate(width * height * 4);
+            image.getPixelReader().getPixels(0, 0, width, height,
+                PixelFormat.getByteBgraPreInstance(), pixels, width * 4);
+            return new Tile(url, width, height, pixels);
+        } // of
+
+        /**
+         * Creates an image from the pixels of this tile.
+         *
+         * @return the image
+         */
+        Image toImage() {
+            WritableImage image = new WritableImage(width, height);
+            image.getPixelWriter().setPixels(0, 0, width, height,
+                PixelFormat.getByteBgraPreInstance(), pixels.duplicate(), width * 4);
+            return image;
+        } // toImage
+    } // Tile
+
+    /**
+     * A wall of tiles and the query it was shown for.
+     */
+    private static class Wall {
+        final String query;
+        final List<Tile> tiles;
+
+        Wall(String query, List<Tile> tiles) {
+            this.query = query;
+            this.tiles = tiles;
+        } // Wall
+    } // Wall
+
+    /**
+     * Constructs an {@code ArtworkPack} backed by the given file. The file
+     * need not exist yet.
+     *
+     * @param file the pack file
+     */
+    public ArtworkPack(Path file) {
+        this.file = file;
+    } // ArtworkPack
+
+    /**
+     * Returns the wall last saved for a query. The pixels of its tiles are
+     * read straight from the mapped file.
+     *
+     * @param query the search query
+     * @return the tiles in display order, or {@code null} if none are saved or
+     *     the file cannot be read
+     */
+    public synchronized List<Tile> read(String query) {
+        String key = SearchCache.normalize(query);
+        for (Wall wall : readWalls()) {
+            if (wall.query.equals(key)) {
+                return wall.tiles;
+            } // if
+        } // for
+        return null;
+    } // read
+
+    /**
+     * Saves the wall of a query, replacing any wall saved for it before. The
+     * walls of the most recent other queries are kept.
+     *
+     * @param query the search query
+     * @param tiles the tiles in display order
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void write(String query, List<Tile> tiles) throws IOException {
+        String key = SearchCache.normalize(query);
+        List<Wall> walls = new ArrayList<>();
+        walls.add(new Wall(key, tiles));
+        for (Wall wall : readWalls()) {
+            if (walls.size() < MAX_WALLS && !wall.query.equals(key)) {
+                walls.add(wall);
+            } // if
+        } // for
+
+        // lays out the pixels after the index, in index order
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        DataOutputStream index = new DataOutputStream(indexBytes);
+        index.writeInt(walls.size());
+        long offset = 0;
+        for (Wall wall : walls) {
+            index.writeUTF(wall.query);
+            index.writeInt(wall.tiles.size());
+            for (Tile tile : wall.tiles) {
+                index.writeUTF(tile.url);
+                index.writeInt(tile.width);
+                index.writeInt(tile.height);
+                index.writeLong(offset);
+                offset += tile.pixels.remaining();
+            } // for
+        } // for
+        index.flush();
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            header.putInt(MAGIC).putInt(indexBytes.size()).flip();
+            writeFully(out, header);
+            writeFully(out, ByteBuffer.wrap(indexBytes.toByteArray()));
+            for (Wall wall : walls) {
+                for (Tile tile : wall.tiles) {
+                    writeFully(out, tile.pixels.duplicate());
+                } // for
+            } // for
+        } // try
+        // a mapping of the old file stays valid after it is replaced
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    } // write
+
+    /**
+     * Maps the pack file and reads its index.
+     *
+     * @return the walls, most recent first; empty if the file is missing or corrupt
+     */
+    private List<Wall> readWalls() {
+        List<Wall> walls = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return walls;
+        } // if
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if (mapped.getInt() != MAGIC) {
+                return walls;
+            } // if
+            int indexLength = mapped.getInt();
+            int data = 8 + indexLength;
+            int count = mapped.getInt();
+            for (int w = 0; w < count; w++) {
+                String query = readUtf(mapped);
+                int size = mapped.getInt();
+                List<Tile> tiles = new ArrayList<>(size);
+                for (int t = 0; t < size; t++) {
+                    String url = readUtf(mapped);
+                    int width = mapped.getInt();
+                    int height = mapped.getInt();
+                    int start = Math.toIntExact(data + mapped.getLong());
+                    // a view of the mapped file; no pixels are copied
+                    ByteBuffer pixels = mapped.duplicate();
+                    pixels.position(start).limit(start + width * height * 4);
+                    tiles.add(new Tile(url, width, height, pixels.slice()));
+                } // for
+                walls.add(new Wall(query, tiles));
+            } // for
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException
+            | ArithmeticException e) {
+            // a damaged pack is only a missed head start
+            walls.clear();
+        } // try
+        return walls;
+    } // readWalls
+
+    /**
+     * Reads a string written by {@link DataOutputStream#writeUTF}. It is
+     * decoded as the modified UTF-8 it was written in, which stores a NUL or
+     * a character outside the Basic Multilingual Plane, such as an emoji
+     * typed in a query, differently from standard UTF-8.
+     *
+     * @param buffer the buffer positioned at the string
+     * @return the string
+     * @throws IOException if the bytes are not modified UTF-8
+     */
+    private static String readUtf(ByteBuffer buffer) throws IOException {
+        // the length prefix is read again by readUTF
+        byte[] bytes = new byte[2 + (buffer.getShort(buffer.position()) & 0xffff)];
+        buffer.get(bytes);
+        return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+    } // readUtf
+
+    /**
+     * Writes all of a buffer to a channel.
+     *
+     * @param out the channel
+     * @param buffer the bytes to write
+     * @throws IOException if the bytes cannot be written
+     */
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        } // while
+    } // writeFully
+
+    /**
+     * Returns the default pack file, inside the artwork cache directory.
+     *
+     * @return the default pack file
+     */
+    static Path defaultFile() {
+        return DiskArtworkStore.defaultDirectory().resolve(FILE_NAME);
+    } // defaultFile
+
+} // ArtworkPack
@@ -0,0 +1,94 @@
+package cs1302.gallery;
+
+/**
+ * An {@code ArtworkResolution} decides how many pixels of artwork to request
+ * for a tile. iTunes artwork URLs end in a size segment such as
+ * {@code 100x100bb.jpg}, and the server renders whatever size that segment
+ * asks for, so the gallery can ask for exactly what a tile needs: its size
+ * times the output scale of the display, rounded up to one of the sizes the
+ * server commonly renders so cached renditions are shared. When the heap is
+ * still nearly full after a collection, as told by {@link MemoryPressure},
+ * one size smaller is requested instead.
+ */
+public class ArtworkResolution {
+
+    /** Sizes requested, in pixels; the server caches these renditions. */
+    static final int[] SIZES = {30, 60, 100, 200, 300, 400, 600};
+
+    /** Size of a preview shown while the full artwork downloads. */
+    static final int TINY = SIZES[0];
+
+    /** Whether sizes follow the tile and display; set with {@code -Dgallery.art.adaptive}. */
+    static final boolean ADAPTIVE =
+        Boolean.parseBoolean(System.getProperty("gallery.art.adaptive", "true"));
+
+    /** Fraction of the heap in use that is tight; set with {@code -Dgallery.art.pressure}. */
+    static final double PRESSURE =
+        Double.parseDouble(System.getProperty("gallery.art.pressure", "0.8"));
+
+    private final double tileSize;
+    private volatile double outputScale;
+
+    /**
+     * Constructs an {@code ArtworkResolution} for tiles of the given size.
+     *
+     * @param tileSize the width and height of a tile, in layout pixels
+     * @param outputScale the number of screen pixels per layout pixel
+     */
+    public ArtworkResolution(double tileSize, double outputScale) {
+        this.tileSize = tileSize;
+        this.outputScale = outputScale;
+    } // ArtworkResolution
+
+    /**
+     * Sets the output scale, such as when the window moves to a display
+     * with a different scale.
+     *
+     * @param outputScale the number of screen pixels per layout pixel
+     */
+    public void setOutputScale(double outputScale) {
+        this.outputScale = outputScale;
+    } // setOutputScale
+
+    /**
+     * Returns the size to request for a tile right now.
+     *
+     * @return the width and height to request, in pixels
+     */
+    public int pixels() {
+        if (!ADAPTIVE) {
+            return (int) tileSize;
+        } // if
+        int wanted = (int) Math.ceil(tileSize * Math.max(1, outputScale));
+        int i = 0;
+        while (i < SIZES.length - 1 && SIZES[i] < wanted) {
+            i++;
+        } // while
+        // trades sharpness for memory when the heap is nearly full
+        if (i > 0 && MemoryPressure.underPressure()) {
+            i--;
+        } // if
+        return SIZES[i];
+    } // pixels
+
+    /**
+     * Rewrites the size segment of an artwork URL, keeping any suffix and the
+     * extension. A URL without a size segment is returned as is.
+     *
+     * @param url the artwork URL, such as {@code .../100x100bb.jpg}
+     * @param pixels the width and height to ask for
+     * @return the URL asking for the given size, such as {@code .../200x200bb.jpg}
+     */
+    static String resize(String url, int pixels) {
+        int end = UrlDeduplicator.pathEnd(url);
+        int start = url.lastIndexOf('/', end - 1) + 1;
+        if (start == 0 || !UrlDeduplicator.isSizeSegment(url, start, end)) {
+            return url;
+        } // if
+        // skips the digits of the width, the 'x' and the digits of the height
+        int x = UrlDeduplicator.skipDigits(url, start, end);
+        int after = UrlDeduplicator.skipDigits(url, x + 1, end);
+        return url.substring(0, start) + pixels + "x" + pixels + url.substring(after);
+    } // resize
+
+} // ArtworkResolution
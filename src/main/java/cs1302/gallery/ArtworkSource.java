@@ -0,0 +1,39 @@
+package cs1302.gallery;
+
+import java.io.IOException;
+
+/**
+ * An {@code ArtworkSource} is where the gallery gets its artwork from. It
+ * answers searches with pages of artwork URLs and serves the bytes behind
+ * those URLs. The default source is the iTunes Search API; see
+ * {@link ItunesSource}. Implementations must be safe to use from many
+ * threads at once.
+ */
+public interface ArtworkSource {
+
+    /**
+     * Searches for artwork. If validators from an earlier response are given,
+     * the source may answer that nothing changed.
+     *
+     * @param term the search term
+     * @param media the media type, such as {@code music}
+     * @param limit the maximum number of results
+     * @param offset the number of results to skip, for fetching later pages
+     * @param etag the {@code ETag} of an earlier response, or {@code null}
+     * @param lastModified the {@code Last-Modified} of an earlier response, or {@code null}
+     * @return the result of the search
+     * @throws IOException if the search fails
+     */
+    SearchResult search(String term, String media, int limit, int offset, String etag,
+        String lastModified) throws IOException;
+
+    /**
+     * Reads the bytes of an artwork image.
+     *
+     * @param url the artwork URL, as returned by a search
+     * @return the encoded image bytes
+     * @throws IOException if the artwork cannot be read
+     */
+    byte[] fetch(String url) throws IOException;
+
+} // ArtworkSource
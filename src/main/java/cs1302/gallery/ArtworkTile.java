@@ -0,0 +1,102 @@
+package cs1302.gallery;
+
+import javafx.animation.FadeTransition;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.StackPane;
+import javafx.util.Duration;
+
+/**
+ * An {@code ArtworkTile} is a fixed-size cell of the gallery wall. Its image
+ * can be changed in place, either at once or with a cross-fade, without
+ * changing the tile's size, so replacing an image never causes the wall to
+ * be laid out again. Must only be used on the JavaFX Application Thread.
+ */
+public class ArtworkTile extends StackPane {
+
+    private final ImageView front;
+    private final ImageView back;
+    private Image image;
+    private FadeTransition fade;
+
+    /**
+     * Constructs an empty {@code ArtworkTile}.
+     *
+     * @param size the width and height of the tile in pixels
+     */
+    public ArtworkTile(double size) {
+        super();
+        front = new ImageView();
+        back = new ImageView();
+        // artwork may have more pixels than the tile on high-density displays
+        for (ImageView view : new ImageView[] {front, back}) {
+            view.setFitWidth(size);
+            view.setFitHeight(size);
+            view.setSmooth(true);
+        } // for
+        setMinSize(size, size);
+        setPrefSize(size, size);
+        setMaxSize(size, size);
+        getChildren().addAll(back, front);
+    } // ArtworkTile
+
+    /**
+     * Returns the image this tile shows, or is fading to.
+     *
+     * @return the image, or {@code null} if the tile is empty
+     */
+    public Image getImage() {
+        return image;
+    } // getImage
+
+    /**
+     * Shows an image at once, finishing any cross-fade in progress.
+     *
+     * @param next the image to show
+     */
+    public void setImage(Image next) {
+        finishFade();
+        image = next;
+        front.setImage(next);
+    } // setImage
+
+    /**
+     * Fades from the current image to another one. The new image is shown
+     * behind the current one while the current one fades out.
+     *
+     * @param next the image to show
+     * @param duration how long the fade takes; zero shows the image at once
+     */
+    public void crossFade(Image next, Duration duration) {
+        if (duration.lessThanOrEqualTo(Duration.ZERO)) {
+            setImage(next);
+            return;
+        } // if
+        finishFade();
+        image = next;
+        back.setImage(next);
+        fade = new FadeTransition(duration, front);
+        fade.setFromValue(1);
+        fade.setToValue(0);
+        fade.setOnFinished(event -> {
+            // the front view takes over the new image and the back is released
+            front.setImage(next);
+            front.setOpacity(1);
+            back.setImage(null);
+            fade = null;
+        });
+        fade.play();
+    } // crossFade
+
+    /**
+     * Jumps to the end of a cross-fade in progress, if any.
+     */
+    private void finishFade() {
+        if (fade != null) {
+            FadeTransition running = fade;
+            running.stop();
+            running.getOnFinished().handle(null);
+        } // if
+    } // finishFade
+
+} // ArtworkTile
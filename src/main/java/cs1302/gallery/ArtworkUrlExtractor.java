@@ -0,0 +1,121 @@
+package cs1302.gallery;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * An {@code ArtworkUrlExtractor} pulls the {@code artworkUrl100} values out of
+ * an iTunes Search API response without building a JSON tree. It reads the
+ * response as a stream of tokens, skips every other field, and stops reading
+ * as soon as enough distinct URLs have been found.
+ */
+public class ArtworkUrlExtractor {
+
+    /** Name of the field that holds the artwork URL of a result. */
+    static final String ARTWORK_FIELD = "artworkUrl100";
+
+    /**
+     * The outcome of reading one response: the distinct artwork URLs and the
+     * number of results that were read to find them.
+     */
+    public static class Page {
+        final List<String> urls;
+        final int results;
+
+        /**
+         * Constructs a {@code Page}.
+         *
+         * @param urls the distinct artwork URLs
+         * @param results the number of results read
+         */
+        Page(List<String> urls, int results) {
+            this.urls = urls;
+            this.results = results;
+        } // Page
+    } // Page
+
+    /**
+     * Prevents instantiation; this class only has static methods.
+     */
+    private ArtworkUrlExtractor() {
+    } // ArtworkUrlExtractor
+
+    /**
+     * Extracts the distinct artwork URLs of a search response in the order
+     * they first appear. Results without an artwork URL, or whose URL is
+     * {@code null}, are skipped. Reading stops once {@code max} distinct URLs
+     * are found, so the rest of the response is never parsed.
+     *
+     * @param reader reader over the JSON response; it should be buffered
+     * @param max the number of distinct URLs after which reading stops
+     * @return the distinct artwork URLs
+     * @throws IOException if the response cannot be read or is not valid JSON
+     */
+    public static List<String> extract(Reader reader, int max) throws IOException {
+        return extractPage(reader, max).urls;
+    } // extract
+
+    /**
+     * Extracts the distinct artwork URLs of a search response like
+     * {@link #extract}, also counting the results read. A page whose count is
+     * below the requested limit is the last page of a query.
+     *
+     * @param reader reader over the JSON response; it should be buffered
+     * @param max the number of distinct URLs after which reading stops
+     * @return the distinct artwork URLs and the number of results read
+     * @throws IOException if the response cannot be read or is not valid JSON
+     */
+    public static Page extractPage(Reader reader, int max) throws IOException {
+        LinkedHashSet<String> urls = new LinkedHashSet<>();
+        int results = 0;
+        JsonReader json = new JsonReader(reader);
+        json.beginObject();
+        while (json.hasNext() && urls.size() < max) {
+            if (json.nextName().equals("results") && json.peek() == JsonToken.BEGIN_ARRAY) {
+                results += readResults(json, urls, max);
+            } else {
+                json.skipValue();
+            } // if
+        } // while
+        return new Page(new ArrayList<>(urls), results);
+    } // extractPage
+
+    /**
+     * Reads the {@code results} array, adding each artwork URL to the set.
+     *
+     * @param json reader positioned at the start of the array
+     * @param urls the distinct URLs found so far
+     * @param max the number of distinct URLs after which reading stops
+     * @return the number of results read
+     * @throws IOException if the response cannot be read or is not valid JSON
+     */
+    private static int readResults(JsonReader json, LinkedHashSet<String> urls, int max)
+        throws IOException {
+        int results = 0;
+        json.beginArray();
+        while (json.hasNext() && urls.size() < max) {
+            results++;
+            if (json.peek() != JsonToken.BEGIN_OBJECT) {
+                json.skipValue();
+                continue;
+            } // if
+            json.beginObject();
+            while (json.hasNext()) {
+                // only the artwork URL is ever turned into a string
+                if (json.nextName().equals(ARTWORK_FIELD) && json.peek() == JsonToken.STRING) {
+                    urls.add(json.nextString());
+                } else {
+                    json.skipValue();
+                } // if
+            } // while
+            json.endObject();
+        } // while
+        return results;
+    } // readResults
+
+} // ArtworkUrlExtractor
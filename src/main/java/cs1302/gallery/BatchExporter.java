@@ -0,0 +1,340 @@
+package cs1302.gallery;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+
+/**
+ * A {@code BatchExporter} runs the search and download pipeline of the gallery
+ * without a display and writes a contact sheet for each of many queries: a
+ * PNG mosaic of the query's artwork, a fixed number of tiles wide. Queries are
+ * read from a file, one per line, and several are processed at once. A line
+ * may hold several comma-separated terms, whose artwork is mixed on one
+ * sheet; see {@link FederatedSearch}. A sheet is composited one row of tiles
+ * at a time and streamed to disk by a {@link PngStreamWriter}, so only a row
+ * of tiles is ever in memory however large the sheet. Artwork bytes go
+ * through the same disk cache as the gallery, so a run after a previous one
+ * mostly reads from disk.
+ *
+ * <p>Run it with {@code GalleryDriver --batch <queries file>}, optionally
+ * followed by {@code --out} (the output directory), {@code --images} (the
+ * artwork per sheet), {@code --columns}, {@code --size} (pixels per tile) and
+ * {@code --parallel} (queries processed at once).
+ */
+public class BatchExporter {
+
+    /** Color of a tile whose artwork could not be fetched or decoded. */
+    static final Color MISSING = new Color(0x40, 0x40, 0x40);
+
+    /** Artwork fetched at once for the rows of all sheets. */
+    static final int FETCHERS = Integer.getInteger("gallery.batch.fetchers", 8);
+
+    private final FederatedSearch searches;
+    private final ArtworkSource source;
+    private final ArtworkCache cache;
+    private final ExecutorService fetchers;
+    private final Path outDir;
+    private final int images;
+    private final int columns;
+    private final int size;
+
+    /**
+     * Constructs a {@code BatchExporter}.
+     *
+     * @param source where searches and artwork come from
+     * @param cache the cache of artwork bytes
+     * @param outDir the directory the sheets are written to
+     * @param images the maximum number of artwork images per sheet
+     * @param columns the number of tiles per row
+     * @param size the width and height of a tile in pixels
+     */
+    public BatchExporter(ArtworkSource source, ArtworkCache cache, Path outDir, int images,
+        int columns, int size) {
+        this.source = source;
+        this.cache = cache;
+        SearchCache cached = new SearchCache(source);
+        this.searches = new FederatedSearch(cached, new PagedSearch(cached));
+        this.outDir = outDir;
+        this.images = images;
+        this.columns = columns;
+        this.size = size;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.fetchers = Executors.newFixedThreadPool(FETCHERS, target -> {
+            Thread t = new Thread(target, "batch-fetch-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    } // BatchExporter
+
+    /**
+     * Writes the sheets of many queries, a few at a time, and reports each
+     * one on standard output as it is done.
+     *
+     * @param queries the queries
+     * @param parallel the number of queries processed at once
+     * @return the number of queries whose sheet could not be written
+     * @throws InterruptedException if interrupted while waiting for the sheets
+     */
+    public int exportAll(List<String> queries, int parallel) throws InterruptedException {
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService sheets = Executors.newFixedThreadPool(Math.max(1, parallel), target -> {
+            Thread t = new Thread(target, "batch-sheet-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        List<Future<Path>> done = new ArrayList<>(queries.size());
+        for (String query : queries) {
+            done.add(sheets.submit(() -> export(query)));
+        } // for
+        int failed = 0;
+        try {
+            for (int i = 0; i < queries.size(); i++) {
+                try {
+                    System.out.println(queries.get(i) + " -> " + done.get(i).get());
+                } catch (ExecutionException e) {
+                    failed++;
+                    System.err.println(queries.get(i) + " failed: " + e.getCause());
+                } // try
+            } // for
+        } finally {
+            sheets.shutdownNow();
+        } // try
+        return failed;
+    } // exportAll
+
+    /**
+     * Writes the sheet of one query. The sheet is written under a temporary
+     * name and renamed when complete, so a sheet on disk is never partial.
+     *
+     * @param query the search query
+     * @return the file the sheet was written to
+     * @throws IOException if the search fails, it finds no artwork, or the sheet
+     *     cannot be written
+     * @throws InterruptedException if interrupted
+     */
+    public Path export(String query) throws IOException, InterruptedException {
+        List<String> urls = new ArrayList<>(images);
+        searches.fetch(query, ContentLoader.MEDIA, images, page -> {
+            urls.addAll(page.subList(0, Math.min(page.size(), images - urls.size())));
+        });
+        if (urls.isEmpty()) {
+            throw new IOException("no artwork found for " + query);
+        } // if
+
+        int rows = (urls.size() + columns - 1) / columns;
+        Path sheet = outDir.resolve(fileName(query));
+        Path partial = outDir.resolve(sheet.getFileName() + ".part");
+        BufferedImage strip = new BufferedImage(columns * size, size, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = new int[columns * size * size];
+        try (OutputStream out = Files.newOutputStream(partial);
+            PngStreamWriter png = new PngStreamWriter(out, columns * size, rows * size)) {
+            // fetches the next row while the current one is composited and written
+            List<Future<BufferedImage>> next = fetchRow(urls, 0);
+            for (int row = 0; row < rows; row++) {
+                List<Future<BufferedImage>> current = next;
+                next = row + 1 < rows ? fetchRow(urls, (row + 1) * columns) : null;
+                composite(strip, current);
+                strip.getRGB(0, 0, columns * size, size, pixels, 0, columns * size);
+                png.writeRows(pixels, size);
+            } // for
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        } // try
+        return Files.move(partial, sheet, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    } // export
+
+    /**
+     * Starts fetching and decoding the artwork of one row of a sheet.
+     *
+     * @param urls the artwork URLs of the sheet
+     * @param from the index of the first URL of the row
+     * @return the pending images of the row, {@code null} where there are none
+     */
+    private List<Future<BufferedImage>> fetchRow(List<String> urls, int from) {
+        List<Future<BufferedImage>> row = new ArrayList<>(columns);
+        for (int i = from; i < from + columns && i < urls.size(); i++) {
+            String url = ArtworkResolution.resize(urls.get(i), size);
+            row.add(fetchers.submit(() -> read(url)));
+        } // for
+        return row;
+    } // fetchRow
+
+    /**
+     * Draws one row of a sheet, scaling each image to its tile. Tiles whose
+     * image is missing are filled with a flat color, and tiles past the end
+     * of the artwork are left black.
+     *
+     * @param strip the image the row is drawn into
+     * @param row the pending images of the row
+     * @throws InterruptedException if interrupted while waiting for an image
+     */
+    private void composite(BufferedImage strip, List<Future<BufferedImage>> row)
+        throws InterruptedException {
+        Graphics2D g = strip.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, strip.getWidth(), strip.getHeight());
+            for (int c = 0; c < row.size(); c++) {
+                BufferedImage image;
+                try {
+                    image = row.get(c).get();
+                } catch (ExecutionException e) {
+                    image = null;
+                } // try
+                if (image != null) {
+                    g.drawImage(image, c * size, 0, size, size, null);
+                } else {
+                    g.setColor(MISSING);
+                    g.fillRect(c * size, 0, size, size);
+                } // if
+            } // for
+        } finally {
+            g.dispose();
+        } // try
+    } // composite
+
+    /**
+     * Reads the artwork behind a URL, from the disk cache if possible, and
+     * decodes it with Java 2D.
+     *
+     * @param url the artwork URL
+     * @return the decoded image, or {@code null} if it could not be fetched or decoded
+     */
+    private BufferedImage read(String url) {
+        byte[] bytes = cache.getBytes(url);
+        boolean downloaded = false;
+        if (bytes == null) {
+            try {
+                bytes = source.fetch(url);
+                downloaded = true;
+            } catch (IOException e) {
+                GalleryMetrics.global().increment(GalleryMetrics.Counter.DOWNLOAD_FAILURES);
+                return null;
+            } // try
+        } // if
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+            if (image != null && downloaded) {
+                cache.putBytes(url, bytes);
+            } // if
+            return image;
+        } catch (IOException e) {
+            GalleryMetrics.global().increment(GalleryMetrics.Counter.DECODE_FAILURES);
+            return null;
+        } // try
+    } // read
+
+    /**
+     * Turns a query into a file name, keeping letters and digits and
+     * replacing everything else with dashes.
+     *
+     * @param query the search query
+     * @return the file name of its sheet
+     */
+    static String fileName(String query) {
+        String name = SearchCache.normalize(query).replaceAll("[^\\p{Alnum}]+", "-")
+            .replaceAll("^-|-$", "");
+        return (name.isEmpty() ? "query" : name) + ".png";
+    } // fileName
+
+    /**
+     * Saves the cache index and stops the fetching threads.
+     */
+    public void shutdown() {
+        fetchers.shutdownNow();
+        cache.flush();
+    } // shutdown
+
+    /**
+     * Writes the contact sheets of the queries in a file.
+     *
+     * @param args the queries file, then {@code --out}, {@code --images},
+     *     {@code --columns}, {@code --size} and {@code --parallel}, each
+     *     followed by a value
+     * @throws IOException if the queries file cannot be read or the output
+     *     directory cannot be created
+     * @throws InterruptedException if interrupted
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("usage: --batch <queries file> [--out dir] [--images n]"
+                + " [--columns n] [--size pixels] [--parallel n]");
+            System.exit(2);
+        } // if
+        Path queriesFile = Paths.get(args[0]);
+        Path outDir = Paths.get("sheets");
+        int images = 100;
+        int columns = 10;
+        int size = 100;
+        int parallel = 2;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+            case "--out":
+                outDir = Paths.get(args[i + 1]);
+                break;
+            case "--images":
+                images = Integer.parseInt(args[i + 1]);
+                break;
+            case "--columns":
+                columns = Integer.parseInt(args[i + 1]);
+                break;
+            case "--size":
+                size = Integer.parseInt(args[i + 1]);
+                break;
+            case "--parallel":
+                parallel = Integer.parseInt(args[i + 1]);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown option: " + args[i]);
+            } // switch
+        } // for
+
+        // one query per line; blank lines and lines starting with # are skipped
+        List<String> queries = new ArrayList<>();
+        for (String line : Files.readAllLines(queriesFile, StandardCharsets.UTF_8)) {
+            String query = line.trim();
+            if (!query.isEmpty() && !query.startsWith("#")) {
+                queries.add(query);
+            } // if
+        } // for
+
+        // decodes with Java 2D; nothing here needs a display
+        System.setProperty("java.awt.headless", "true");
+        Files.createDirectories(outDir);
+        ArtworkSource source = new ItunesSource(ArtworkDownloader.DEFAULT_TIMEOUT,
+            ContentLoader.LIMIT);
+        BatchExporter exporter = new BatchExporter(source, new ArtworkCache(), outDir, images,
+            columns, size);
+        int failed;
+        try {
+            failed = exporter.exportAll(queries, parallel);
+        } finally {
+            exporter.shutdown();
+        } // try
+        System.out.println((queries.size() - failed) + " of " + queries.size()
+            + " sheets written to " + outDir);
+        System.exit(failed == 0 ? 0 : 1);
+    } // main
+
+} // BatchExporter
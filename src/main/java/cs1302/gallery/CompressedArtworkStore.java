@@ -0,0 +1,98 @@
+package cs1302.gallery;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A {@code CompressedArtworkStore} keeps the raw, still encoded bytes of
+ * recently used artwork in memory outside the Java heap. Encoded artwork is
+ * several times smaller than its decoded pixels, so many more images fit in
+ * the same budget, and an image evicted from the decoded tier can be decoded
+ * again without touching the disk or the network. The bytes live in direct
+ * buffers, which do not count against {@code -Xmx}. When the store grows past
+ * its byte limit, the least recently used entries are dropped.
+ */
+public class CompressedArtworkStore {
+
+    /** Default budget in megabytes; set with {@code -Dgallery.cache.compressedMb}. */
+    static final int DEFAULT_MB = Integer.getInteger("gallery.cache.compressedMb", 16);
+
+    private final LinkedHashMap<String, ByteBuffer> entries;
+    private final long maxBytes;
+    private long totalBytes;
+    private long evictions;
+
+    /**
+     * Constructs an empty {@code CompressedArtworkStore}. A limit of zero
+     * disables the store, so every lookup misses.
+     *
+     * @param maxBytes the maximum number of encoded bytes to keep
+     */
+    public CompressedArtworkStore(long maxBytes) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.maxBytes = maxBytes;
+    } // CompressedArtworkStore
+
+    /**
+     * Returns a copy of the stored bytes for a URL.
+     *
+     * @param url the artwork URL
+     * @return the stored bytes, or {@code null} if the URL is not stored
+     */
+    public synchronized byte[] get(String url) {
+        ByteBuffer buffer = entries.get(url);
+        if (buffer == null) {
+            return null;
+        } // if
+        // copies through a duplicate so the stored position never moves
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    } // get
+
+    /**
+     * Stores the bytes for a URL, dropping the least recently used entries
+     * if the store grows past its limit. Bytes larger than the whole limit
+     * are not stored.
+     *
+     * @param url the artwork URL
+     * @param bytes the encoded artwork bytes
+     */
+    public synchronized void put(String url, byte[] bytes) {
+        if (bytes.length > maxBytes || entries.containsKey(url)) {
+            return;
+        } // if
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        entries.put(url, buffer);
+        totalBytes += bytes.length;
+
+        // drops least recently used entries until the store fits
+        Iterator<ByteBuffer> eldest = entries.values().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            totalBytes -= eldest.next().capacity();
+            eldest.remove();
+            evictions++;
+        } // while
+    } // put
+
+    /**
+     * Returns the number of encoded bytes currently stored.
+     *
+     * @return the stored byte count
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    } // getTotalBytes
+
+    /**
+     * Returns the number of entries dropped to stay within the limit.
+     *
+     * @return the eviction count
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    } // getEvictions
+
+} // CompressedArtworkStore
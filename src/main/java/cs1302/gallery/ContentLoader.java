@@ -2,61 +2,120 @@ package cs1302.gallery;
 
 import javafx.scene.layout.VBox;
 import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
 import javafx.scene.layout.TilePane;
-import java.net.URLEncoder;
-import java.net.URL;
-import java.io.InputStreamReader;
-import com.google.gson.JsonParser;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonArray;
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.TextArea;
+import javafx.stage.Screen;
+import javafx.util.Duration;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Represents a {@code ContentLoader} that is a {@code VBox}. It contains
  * the tilepane which is meant to hold artwork images taken from
- * the iTunes Search API.
+ * the iTunes Search API. Alternatively, it can show a {@link GalleryGrid}
+ * for browsing every artwork found by the query.
  */
 public class ContentLoader extends VBox {
 
-    ImageView[] displayedImages;
-    ImageView[] hiddenImages;
+    /** Media type of the searched content. */
+    static final String MEDIA = "music";
+
+    /** Number of search results requested per page. */
+    static final int LIMIT = PagedSearch.PAGE_SIZE;
+
+    /** Number of artwork images a load downloads up front: those of the tilepane. */
+    static final int CAPACITY = 20;
+
+    /** Number of distinct artwork URLs gathered per query; set with {@code -Dgallery.target}. */
+    static final int TARGET = Integer.getInteger("gallery.target", 2 * PagedSearch.PAGE_SIZE);
+
+    ArtworkTile[] displayedTiles;
+    String[] displayedUrls;
+    ReplacementPrefetcher prefetcher;
     TilePane tile;
-    int numUrls;
+    GalleryGrid grid;
     int urlCount;
     private GalleryApp app;
+    private ArtworkCache cache;
+    private ArtworkDownloader downloader;
+    private ArtworkResolution resolution;
+    private ArtworkPack pack;
+    private volatile String packedQuery;
+    private FederatedSearch federated;
+    private volatile List<Future<?>> downloads;
+    private volatile List<Future<?>> previews;
+    private final AtomicInteger generation = new AtomicInteger();
+    private FxUpdateQueue updates;
+    private boolean progressive;
+    private Image placeholder;
+    private Image[] arrived;
+    private Duration fade;
 
     /**
      * Constructor for {@code ContentLoader} that acts as a VBox. It
      * initializes a tile pane and adds it to the content loader. It sets
      * the height and width of the content loader. In addition, it initializes
-     * two image view arrays for the displayed images and hidden images.
+     * the tiles for the displayed images and the replacement prefetcher. The
+     * tiles, the prefetcher and the grid are only changed on the JavaFX
+     * Application Thread, so loads and random replacement never race.
      *
      * @param app the current application object
      */
     public ContentLoader(GalleryApp app) {
         super();
         this.app = app;
+        this.cache = new ArtworkCache();
+        // gives back decoded images when the heap is nearly full
+        MemoryPressure.onPressure(cache::release);
+        // searches and artwork both come from iTunes unless -Dgallery.endpoint says otherwise
+        ArtworkSource source = new ItunesSource(ArtworkDownloader.DEFAULT_TIMEOUT, LIMIT);
+        this.downloader = new ArtworkDownloader(cache, source);
+        this.downloader.setByteListener(count -> app.progressArea.bytesReceived(count));
+        SearchCache searches = new SearchCache(source);
+        // a query of several terms, separated by commas, searches them all at once
+        this.federated = new FederatedSearch(searches, new PagedSearch(searches));
+        // the walls of recent queries, for showing one at once on the next start
+        this.pack = new ArtworkPack(ArtworkPack.defaultFile());
+        this.downloads = Collections.emptyList();
+        this.previews = Collections.emptyList();
+        // asks for as many pixels as the tiles take up on the screen
+        this.resolution = new ArtworkResolution(ArtworkDownloader.IMAGE_SIZE,
+            Screen.getPrimary().getOutputScaleX());
+        this.updates = new FxUpdateQueue();
+        // shows each tile as soon as its image is ready unless -Dgallery.progressive=false
+        this.progressive = Boolean.parseBoolean(System.getProperty("gallery.progressive", "true"));
+        this.placeholder = createPlaceholder();
+        this.fade = Duration.ZERO;
 
         tile = new TilePane();
         tile.setPrefColumns(5);
 
-        // initializes displayed ImageView objects to an array
-        displayedImages = new ImageView[20];
+        // initializes the displayed tiles, which stay in the tilepane for good
+        displayedTiles = new ArtworkTile[20];
         for (int i = 0; i < 20; i++) {
-            displayedImages[i] = new ImageView();
+            displayedTiles[i] = new ArtworkTile(ArtworkDownloader.IMAGE_SIZE);
+            displayedTiles[i].setImage(placeholder);
         } // for
+        tile.getChildren().addAll(displayedTiles);
 
-        // initializes hidden ImageView objects to an array
-        hiddenImages = new ImageView[130];
-        for (int j = 0; j < 130; j++) {
-            hiddenImages[j] = new ImageView();
-        } // for
+        // keeps a few replacement images ready instead of a pool of hidden images
+        displayedUrls = new String[20];
+        prefetcher = new ReplacementPrefetcher(downloader, updates);
+
+        // the grid for browsing all results; shown instead of the tilepane on request
+        grid = new GalleryGrid(downloader, resolution, updates, placeholder);
+        grid.setPrefHeight(400);
 
         // sets height and width of content loader and adds the tilepane
         this.setPrefWidth(500);
@@ -65,71 +124,174 @@ public class ContentLoader extends VBox {
     } // ContentLoader
 
     /**
-     * Loads the artwork images into the tilepane. It retrieves results
-     * for a query formatted using JSON. It then retrieves information
-     * using Gson to acquire the URLs for artwork images. The artwork
-     * images are then displayed to the user.
+     * Shows the tilepane of 20 artwork images. Must be called on the
+     * JavaFX Application Thread.
+     */
+    public void showWall() {
+        this.getChildren().setAll(tile);
+    } // showWall
+
+    /**
+     * Shows the scrollable grid of every artwork found by the query.
+     * Must be called on the JavaFX Application Thread.
+     */
+    public void showGrid() {
+        this.getChildren().setAll(grid);
+    } // showGrid
+
+    /**
+     * Loads the artwork images into the tilepane. It gathers the URLs of
+     * artwork images for a query page by page through the search cache,
+     * which only asks the iTunes Search API when it has no fresh answer. A
+     * query of several comma-separated terms searches them all at once and
+     * mixes their artwork; see {@link FederatedSearch}.
+     * As soon as a page brings the number of distinct URLs past 20, the
+     * artwork images are downloaded and displayed to the user, while later
+     * pages keep adding replacements and results to the grid. Starting a new
+     * load supersedes any load still running: the older one stops before
+     * touching the gallery and its downloads are cancelled. A load that
+     * completes saves its wall to the artwork pack for the next start.
      *
      * @param sUrl the query represented as a string
      */
     public void loadContent(String sUrl) {
+        final int load = generation.incrementAndGet();
+        // a wall from the pack stays up while the same query refreshes it
+        final boolean warm = SearchCache.normalize(sUrl).equals(packedQuery);
+        final List<String> urlStrings = new ArrayList<>();
+        final List<Future<?>> started = new CopyOnWriteArrayList<>();
+        final long loading = GalleryMetrics.global().start();
+        // the size of the artwork is chosen once per load, as memory allows
+        final int pixels = resolution.pixels();
         try {
             // runs before loading images
             beforeLoading();
 
-            // sets up string to search the iTunes API
-            sUrl = URLEncoder.encode(sUrl, "UTF-8");
-            sUrl = "https://itunes.apple.com/search?term=" + sUrl;
-            sUrl = sUrl + "&limit=150&media=music";
-            // uses the URL from the query and downloads the result
-            URL url = new URL(sUrl);
-            InputStreamReader reader = new InputStreamReader(url.openStream());
-            // parses the JSON response
-            JsonElement je = JsonParser.parseReader(reader);
-            // converts to datatype using Gson
-            JsonObject root = je.getAsJsonObject();
-            // interacts with array from iTunes Search API
-            JsonArray results = root.getAsJsonArray("results");
-            int numResults = results.size();
-
-            // tracks the number of URLs
-            numUrls = 0;
-            // puts valid urls in a string array
-            String[] urlStrings = getUrls(results, numResults);
-            // deletes any duplicates
-            urlStrings = deleteDuplicates(urlStrings);
+            // gathers distinct URLs, including other sizes of the same artwork,
+            // from every term of the query, and starts showing them as each page lands
+            federated.fetch(sUrl, MEDIA, TARGET,
+                page -> addPage(load, pixels, warm, urlStrings, page, started));
 
             // if number of URLs is less than 21, throw an exception
-            if (numUrls < 21) {
+            if (urlStrings.size() < 21) {
                 throw new IllegalArgumentException("less than 21 distinct image URLs gathered");
             } // if
 
-            // sets the URL count to the number of URLs if no exception occurs
-            urlCount = numUrls;
+            // waits for the images of the tilepane
+            setImageViews(load, started);
 
-            // tracks loading images for the progress bar
-            app.progressArea.progressCount = 0;
-            // takes string URLs, downloads images, and sets imageview arrays
-            setImageViews(urlStrings);
+            // swaps out tiles that show the same cover as an earlier tile
+            updates.post(() -> replaceDuplicates(load));
 
-            // clears tilepane before adding imageviews
-            Platform.runLater(() -> tile.getChildren().clear());
-            // adds displayed imageviews to the tilepane
-            for (int i = 0; i < 20; i++) {
-                addTiles(i);
-            } // for
+            // remembers the wall so the next start can show it at once
+            saveWall(load, sUrl, urlStrings.subList(0, 20));
 
         } catch (IllegalArgumentException | IOException e) {
-            // handles alerts
-            Runnable showAlert = () -> alert(e);
-            Platform.runLater(showAlert);
+            // handles alerts, unless a newer load made this one irrelevant
+            if (load == generation.get()) {
+                Runnable showAlert = () -> alert(e);
+                Platform.runLater(showAlert);
+            } // if
+        } catch (InterruptedException e) {
+            // the load was superseded; leaves the gallery to the newer one
+            ArtworkDownloader.cancel(started);
+            Thread.currentThread().interrupt();
         } finally {
-            // runs after loading images
-            afterLoading();
+            // runs after loading images, if this is still the latest load
+            if (load == generation.get()) {
+                GalleryMetrics.global().stop(GalleryMetrics.Phase.LOAD, loading);
+                packedQuery = null;
+                afterLoading();
+            } // if
         } // try
 
     } // loadContent
 
+    /**
+     * Takes in the new URLs of a page. Once more than 20 distinct URLs have
+     * been gathered, the tiles are reset and their downloads started. Every
+     * URL is also added to the grid and to the URLs the replacement
+     * prefetcher cycles through.
+     *
+     * @param load the generation of the load
+     * @param pixels the width and height of the artwork requested
+     * @param warm whether the tiles show this query's wall from the pack
+     * @param urlStrings every distinct URL gathered so far by this load
+     * @param page the new URLs of the page
+     * @param started the downloads started so far by this load
+     * @throws InterruptedException if the load has been superseded
+     */
+    private void addPage(int load, int pixels, boolean warm, List<String> urlStrings,
+        List<String> page, List<Future<?>> started) throws InterruptedException {
+        boolean showing = urlStrings.size() >= 21;
+        urlStrings.addAll(page);
+        if (urlStrings.size() < 21) {
+            // waits until the tilepane can be filled
+            return;
+        } // if
+
+        synchronized (this) {
+            // a newer load has started; leaves the gallery to it
+            if (load != generation.get() || Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("load superseded");
+            } // if
+            if (!showing) {
+                startImageViews(load, started, warm);
+                final List<String> all = new ArrayList<>(urlStrings);
+                updates.post(() -> {
+                    if (load == generation.get()) {
+                        grid.setUrls(all);
+                        // the first URLs are the tiles'; replacements come from the rest
+                        for (int i = 0; i < 20; i++) {
+                            displayedUrls[i] = all.get(i);
+                        } // for
+                        prefetcher.reset(all, 20, pixels, this::isDisplayed,
+                            this::looksDisplayed);
+                    } // if
+                });
+            } else {
+                updates.post(() -> {
+                    if (load == generation.get()) {
+                        grid.addUrls(page);
+                        prefetcher.addUrls(page);
+                    } // if
+                });
+            } // if
+
+            // downloads the new URLs that fit in the tilepane
+            final int from = started.size();
+            int to = Math.min(CAPACITY, urlStrings.size());
+            if (from < to) {
+                List<String> sized = new ArrayList<>(to - from);
+                for (String url : urlStrings.subList(from, to)) {
+                    sized.add(ArtworkResolution.resize(url, pixels));
+                } // for
+                if (!warm) {
+                    startPreviews(load, pixels, from, urlStrings.subList(from, to), sized);
+                } // if
+                started.addAll(downloader.downloadAll(sized, pixels,
+                    (index, artImage) -> imageLoaded(load, from + index, artImage)));
+            } // if
+            // sets the URL count to the number of URLs being downloaded
+            urlCount = to;
+        } // synchronized
+
+        // tracks loading images for the progress bar
+        app.progressArea.setTotal(urlCount);
+    } // addPage
+
+    /**
+     * Saves any state that should survive a restart, such as the index of
+     * the artwork cache. Called when the application stops.
+     */
+    public void shutdown() {
+        ArtworkDownloader.cancel(downloads);
+        ArtworkDownloader.cancel(previews);
+        prefetcher.clear();
+        downloader.shutdown();
+        cache.flush();
+    } // shutdown
+
     /**
      * If an exception is encountered, then an alert is shown to the user.
      *
@@ -145,179 +307,389 @@ public class ContentLoader extends VBox {
     } // alert
 
     /**
-     * Gets the URLs from the JsonArray and puts them into a string array. Only puts
-     * the URL in the string array if JsonElement is not null.
+     * Prepares the displayed tiles and the prefetcher for a new load. The
+     * downloads of any previous load are cancelled. In progressive mode, the
+     * tiles are reset to placeholders right away and each one shows its
+     * artwork as soon as it is ready, unless they show the query's wall from
+     * the pack, which the new artwork replaces tile by tile. Must be called
+     * while holding this object's lock.
      *
-     * @param results the JsonArray from the iTunes Search API
-     * @param numResults number of results from the search query
-     * @return the string array containing the URLs
+     * @param load the generation of the load
+     * @param started the list that will hold the downloads of the load
+     * @param warm whether the tiles show this query's wall from the pack
      */
-    private String[] getUrls(JsonArray results, int numResults) {
-        String[] urlStrings = new String[150];
-
-        for (int i = 0; i < numResults; i++) {
-            // get each result with the JsonArray
-            JsonObject result = results.get(i).getAsJsonObject();
-            JsonElement artworkUrl100 = result.get("artworkUrl100");
-            // checks if the JsonElement is null
-            if (!artworkUrl100.isJsonNull()) {
-                String imageUrl = artworkUrl100.getAsString();
-                // adds URL string into the array
-                urlStrings[numUrls] = imageUrl;
-                // keeps track of number of URLs
-                numUrls += 1;
+    private void startImageViews(int load, List<Future<?>> started, boolean warm) {
+        // abandons the downloads of any previous load
+        ArtworkDownloader.cancel(downloads);
+        ArtworkDownloader.cancel(previews);
+        downloads = started;
+        previews = new CopyOnWriteArrayList<>();
+        arrived = new Image[20];
+        updates.post(() -> {
+            prefetcher.clear();
+            if (progressive && !warm) {
+                // shows placeholders until the new artwork arrives
+                for (ArtworkTile artworkTile : displayedTiles) {
+                    artworkTile.setImage(placeholder);
+                } // for
+            } // if
+        });
+    } // startImageViews
+
+    /**
+     * In progressive mode, starts downloading tiny previews of the displayed
+     * artwork among the given URLs, ahead of the full-size downloads. A
+     * preview fills its tile until the full-size image replaces it. Artwork
+     * already in memory at full size needs no preview. Must be called while
+     * holding this object's lock.
+     *
+     * @param load the generation of the load
+     * @param pixels the width and height of the full-size artwork
+     * @param from the index of the first URL
+     * @param urls the URLs as found by the search
+     * @param sized the same URLs asking for the full size
+     */
+    private void startPreviews(int load, int pixels, int from, List<String> urls,
+        List<String> sized) {
+        if (!progressive || pixels <= ArtworkResolution.TINY) {
+            return;
+        } // if
+        for (int i = 0; i < urls.size() && from + i < 20; i++) {
+            if (downloader.cached(sized.get(i)) == null) {
+                final int index = from + i;
+                String tiny = ArtworkResolution.resize(urls.get(i), ArtworkResolution.TINY);
+                previews.add(downloader.downloadOne(tiny, ArtworkResolution.TINY,
+                    artImage -> previewLoaded(load, index, artImage)));
             } // if
         } // for
+    } // startPreviews
 
-        return urlStrings;
-    } // getUrls
+    /**
+     * Called from a download worker when a preview has been downloaded.
+     * Shows it unless the full-size image has already arrived.
+     *
+     * @param load the generation of the load
+     * @param index index of the displayed tile
+     * @param artImage the preview, or {@code null} if it failed
+     */
+    private synchronized void previewLoaded(int load, int index, Image artImage) {
+        if (artImage != null && arrived[index] == null && load == generation.get()) {
+            updates.post(() -> setDisplayed(load, index, artImage));
+        } // if
+    } // previewLoaded
 
     /**
-     * Deletes any duplicates from the URL string array.
+     * Waits for the images of a load. The tiles hold the images that are
+     * diplayed in the main content area, and they are downloaded in
+     * parallel. If the load is not progressive, the tiles are updated
+     * together once all displayed images are done. Replacements are fetched
+     * a few at a time by the prefetcher, not by the load.
      *
-     * @param urlStrings the string array containing URLs
-     * @return the string array without duplicate URLs
+     * @param load the generation of the load
+     * @param started the downloads started by the load
+     * @throws InterruptedException if the load is interrupted while waiting
      */
-    private String[] deleteDuplicates(String[] urlStrings) {
-        // do nothing if there are 0 or 1 URLs
-        if (urlStrings.length == 0 || urlStrings.length == 1) {
-            return urlStrings;
+    private void setImageViews(int load, List<Future<?>> started) throws InterruptedException {
+        // waits for the displayed images
+        ArtworkDownloader.await(started);
+
+        if (!progressive) {
+            // swaps in all displayed images in a single update
+            final Image[] images;
+            synchronized (this) {
+                images = arrived.clone();
+            } // synchronized
+            updates.post(() -> {
+                for (int i = 0; i < 20; i++) {
+                    setDisplayed(load, i, images[i]);
+                } // for
+            });
         } // if
+    } // setImageViews
 
-        // boolean array to check for duplicates
-        boolean[] delete = new boolean[numUrls];
-        for (int i = 0; i < delete.length; i++) {
-            delete[i] = true;
-        } // for
+    /**
+     * Called from a download worker when the artwork at the given index has
+     * been downloaded. Updates the progress bar and places the image in a
+     * displayed tile. Images are applied on the JavaFX Application Thread in
+     * the next batch of updates. Images of a superseded load are dropped.
+     *
+     * @param load the generation of the load
+     * @param index index of the artwork URL that was downloaded
+     * @param artImage the downloaded artwork, or {@code null} if it failed
+     */
+    private synchronized void imageLoaded(int load, int index, Image artImage) {
+        if (load != generation.get()) {
+            // a newer load owns the tiles and the progress bar
+            return;
+        } // if
+        // adds 1 to the progress count; published once per frame
+        app.progressArea.imageDone();
+        if (index < 20) {
+            arrived[index] = artImage;
+            if (progressive) {
+                // modifies the displayed tile in the next pulse
+                updates.post(() -> setDisplayed(load, index, artImage));
+            } // if
+        } // if
+    } // imageLoaded
+
+    /**
+     * Sets the image of a displayed tile. Must be called on the JavaFX
+     * Application Thread.
+     *
+     * @param load the generation of the load the image belongs to
+     * @param count index of the displayed tile
+     * @param artImage artwork to be set in the tile, or {@code null}
+     *     to keep the current image
+     */
+    private void setDisplayed(int load, final int count, final Image artImage) {
+        // checks if there is an error getting the image or the load is stale
+        if (artImage != null && load == generation.get()) {
+            displayedTiles[count].setImage(artImage);
+        } // if
+    } // setDisplayed
 
-        // loops through and marks duplicates for deletion
-        for (int i = 0; i < delete.length; i++) {
-            if (delete[i] == true) {
-                // checks all following values
-                for (int j = i + 1; j < delete.length; j++) {
-                    // checks if there are duplicates
-                    if (urlStrings[i].equals(urlStrings[j])) {
-                        // if there is a duplicate, make it false
-                        delete[j] = false;
-                        // decrease number of URLs
-                        numUrls -= 1;
+    /**
+     * Replaces the image of one random displayed tile with the next image of
+     * the prefetcher, which then starts fetching another. The image that was
+     * displayed is dropped rather than kept for later. Only that one tile
+     * changes, so the tilepane is not laid out again. Does nothing while no
+     * replacement is ready. Must be called on the JavaFX Application Thread.
+     */
+    public void replaceRandomTile() {
+        ReplacementPrefetcher.Entry next = prefetcher.poll();
+        if (next == null) {
+            return;
+        } // if
+        // chooses a random displayed tile
+        int display = (int) (Math.random() * 20);
+        displayedTiles[display].crossFade(next.image, fade);
+        displayedUrls[display] = next.url;
+    } // replaceRandomTile
+
+    /**
+     * Replaces each tile that looks the same as an earlier tile with an image
+     * from the prefetcher, as long as the prefetcher has images ready. Must be
+     * called on the JavaFX Application Thread.
+     *
+     * @param load the generation of the load whose tiles are checked
+     */
+    private void replaceDuplicates(int load) {
+        ArtworkFingerprints fingerprints = downloader.getFingerprints();
+        for (int i = 1; i < 20 && load == generation.get(); i++) {
+            Image image = displayedTiles[i].getImage();
+            if (!isArtwork(image)) {
+                continue;
+            } // if
+            for (int j = 0; j < i; j++) {
+                Image earlier = displayedTiles[j].getImage();
+                if (isArtwork(earlier) && fingerprints.similar(earlier, image)) {
+                    ReplacementPrefetcher.Entry next = prefetcher.poll();
+                    if (next == null) {
+                        return;
                     } // if
-                } // for
+                    GalleryMetrics.global().increment(GalleryMetrics.Counter.DUPLICATES_DROPPED);
+                    displayedTiles[i].setImage(next.image);
+                    displayedUrls[i] = next.url;
+                    break;
+                } // if
+            } // for
+        } // for
+    } // replaceDuplicates
+
+    /**
+     * Checks whether an image looks the same as the artwork of a displayed
+     * tile. Must be called on the JavaFX Application Thread.
+     *
+     * @param image the image
+     * @return whether a tile shows artwork that looks the same
+     */
+    private boolean looksDisplayed(Image image) {
+        ArtworkFingerprints fingerprints = downloader.getFingerprints();
+        for (ArtworkTile artworkTile : displayedTiles) {
+            Image shown = artworkTile.getImage();
+            if (isArtwork(shown) && fingerprints.similar(shown, image)) {
+                return true;
             } // if
         } // for
+        return false;
+    } // looksDisplayed
 
-        String[] newArray = new String[numUrls];
-        int count = 0;
+    /**
+     * Checks whether an image is full-size artwork rather than the
+     * placeholder or a preview.
+     *
+     * @param image the image, or {@code null}
+     * @return whether it is artwork
+     */
+    private boolean isArtwork(Image image) {
+        return image != null && image != placeholder
+            && image.getWidth() > ArtworkResolution.TINY;
+    } // isArtwork
 
-        // loops through and adds strings if boolean is true
-        for (int i = 0; i < delete.length; i++) {
-            // if boolean is true, add string URL to the array
-            if (delete[i] == true) {
-                newArray[count] = urlStrings[i];
-                count += 1;
+    /**
+     * Checks whether an artwork URL is shown by one of the displayed tiles.
+     * Must be called on the JavaFX Application Thread.
+     *
+     * @param url the artwork URL, as found by the search
+     * @return whether a tile shows it
+     */
+    private boolean isDisplayed(String url) {
+        for (String displayed : displayedUrls) {
+            if (url.equals(displayed)) {
+                return true;
             } // if
         } // for
+        return false;
+    } // isDisplayed
 
-        return newArray;
-    } // deleteDuplicates
+    /**
+     * Shows the wall saved in the artwork pack for a query, if there is one,
+     * before anything is searched or downloaded. A load of the same query
+     * then refreshes the wall in place. Must be called on the JavaFX
+     * Application Thread.
+     *
+     * @param query the search query
+     * @return whether a saved wall is shown
+     */
+    public boolean showPacked(String query) {
+        List<ArtworkPack.Tile> tiles = pack.read(query);
+        if (tiles == null || tiles.size() < 20) {
+            return false;
+        } // if
+        for (int i = 0; i < 20; i++) {
+            ArtworkPack.Tile packed = tiles.get(i);
+            displayedTiles[i].setImage(packed.toImage());
+            displayedUrls[i] = packed.url;
+        } // for
+        packedQuery = SearchCache.normalize(query);
+        return true;
+    } // showPacked
 
     /**
-     * Places image views inside of two arrays. The first array consists
-     * of images that will be diplayed in the main content area. The second
-     * array consists of images that are not currently visible.
+     * Saves the wall of a load to the artwork pack, if every tile has its
+     * full-size artwork. Failing to save only costs the next start its head
+     * start.
      *
-     * @param urlStrings string array that contains the URLs
+     * @param load the generation of the load
+     * @param query the search query
+     * @param urls the URLs of the tiles, in order
      */
-    private void setImageViews(String[] urlStrings) {
-        // loop for displayed images
+    private void saveWall(int load, String query, List<String> urls) {
+        final Image[] images;
+        synchronized (this) {
+            if (load != generation.get()) {
+                return;
+            } // if
+            images = arrived.clone();
+        } // synchronized
+        List<ArtworkPack.Tile> tiles = new ArrayList<>(20);
         for (int i = 0; i < 20; i++) {
-            // downloads the image from the URL string
-            final Image artImage = new Image(urlStrings[i], 100, 100, false, true);
-            // adds 1 to the progress count
-            app.progressArea.progressCount += 1;
-            // sets progress to progress count divided by URL count
-            Platform.runLater(() -> setProgress(app.progressArea.progressCount / urlCount));
-            // checks if there is an error getting the image
-            if (!artImage.isError()) {
-                // modifies displayed image view array
-                setDisplayed(i, artImage);
+            if (images[i] == null) {
+                return;
             } // if
+            tiles.add(ArtworkPack.Tile.of(urls.get(i), images[i]));
         } // for
+        try {
+            pack.write(query, tiles);
+        } catch (IOException e) {
+            // the next completed load tries again
+        } // try
+    } // saveWall
 
-        // loop for hidden images
-        for (int i = 0; i < urlCount - 20; i++) {
-            // downloads the image from the URL string
-            final Image artImage = new Image(urlStrings[i + 20], 100, 100, false, true);
-            // adds 1 to the progress count
-            app.progressArea.progressCount += 1;
-            // sets progress to progress count divided by URL count
-            Platform.runLater(() -> setProgress(app.progressArea.progressCount / urlCount));
-            // checks if there is an error getting the image
-            if (!artImage.isError()) {
-                // modifies hidden image view array
-                setHidden(i, artImage);
+    /**
+     * Fills the tiles with artwork of a query still being typed, using only
+     * what is cached: the URLs of the best matching cached search of each
+     * term and the images of those URLs already decoded in memory. Tiles
+     * without such an image keep what they show. Nothing is searched. Even
+     * without cached artwork, the preview supersedes any load like a new
+     * load would: updates still queued by an older load are dropped, and the
+     * grid and the prefetcher let go of the older query's URLs. Must be
+     * called on the JavaFX Application Thread.
+     *
+     * @param query the search query typed so far
+     */
+    public void preview(String query) {
+        // queued updates of older loads no longer match the generation
+        generation.incrementAndGet();
+        packedQuery = null;
+        ArtworkDownloader.cancel(downloads);
+        ArtworkDownloader.cancel(previews);
+        prefetcher.clear();
+        app.progressArea.finish();
+        List<String> urls = federated.peek(query, MEDIA, LIMIT);
+        grid.setUrls(urls != null ? urls : Collections.emptyList());
+        if (urls == null) {
+            return;
+        } // if
+
+        int pixels = resolution.pixels();
+        int shown = 0;
+        for (String url : urls) {
+            if (shown == CAPACITY) {
+                break;
+            } // if
+            Image cached = downloader.cached(ArtworkResolution.resize(url, pixels));
+            if (cached != null) {
+                displayedTiles[shown].setImage(cached);
+                displayedUrls[shown] = url;
+                shown++;
             } // if
         } // for
-    } // setImageViews
+    } // preview
 
     /**
-     * Modifies image view array that contains displayed images. Sets an image
-     * to each image view.
+     * Sets how long random replacement takes to fade between images.
+     * Must be called on the JavaFX Application Thread.
      *
-     * @param count index in the displayed image view array
-     * @param artImage artwork to be set in the image view
+     * @param duration the fade duration; zero swaps images at once
      */
-    private void setDisplayed(final int count, final Image artImage) {
-        displayedImages[count].setImage(artImage);
-    } // setDisplayed
+    public void setFadeDuration(Duration duration) {
+        fade = duration;
+    } // setFadeDuration
 
     /**
-     * Modifies image view array that contains hidden images. Sets an image
-     * to each image view.
+     * Sets the number of screen pixels per layout pixel of the window, so
+     * later loads request artwork that is sharp on its display.
      *
-     * @param count index in the hidden image view array
-     * @param artImage artwork to be set in the image view
+     * @param outputScale the output scale of the window
      */
-    private void setHidden(final int count, final Image artImage) {
-        hiddenImages[count].setImage(artImage);
-    } // setHidden
+    public void setOutputScale(double outputScale) {
+        resolution.setOutputScale(outputScale);
+    } // setOutputScale
 
     /**
-     * Updates the tile pane. It adds each image view from the displayed array
-     * into the tilepane.
+     * Creates the image shown in a tile while its artwork is downloading.
      *
-     * @param count index in the displayed image view array
+     * @return a light gray 100x100 image
      */
-    public void addTiles(final int count) {
-        Platform.runLater(() -> tile.getChildren().add(displayedImages[count]));
-    } // addTiles
+    private static Image createPlaceholder() {
+        int size = (int) ArtworkDownloader.IMAGE_SIZE;
+        WritableImage image = new WritableImage(size, size);
+        PixelWriter writer = image.getPixelWriter();
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                writer.setColor(x, y, Color.gray(0.9));
+            } // for
+        } // for
+        return image;
+    } // createPlaceholder
 
     /**
-     * Code that executes before images are loaded. Sets the progress
-     * bar to 0% complete and disables the update button.
+     * Code that executes before images are loaded. Starts tracking
+     * progress at 0% complete. The update button stays enabled, since
+     * a new load simply supersedes this one.
      */
     private void beforeLoading() {
-        app.toolBar.updateImages.setDisable(true);
-        Platform.runLater(() -> setProgress(0));
+        app.progressArea.start(0);
     } // beforeLoading
 
     /**
-     * Code that always executes after the try-catch block. It runs even
-     * if an exception is thrown. Sets the progress bar to 100% complete
-     * and enables the update button.
+     * Code that always executes after the try-catch block of the latest
+     * load. It runs even if an exception is thrown. Sets the progress bar
+     * to 100% complete.
      */
     private void afterLoading() {
-        app.toolBar.updateImages.setDisable(false);
-        Platform.runLater(() -> setProgress(1));
+        app.progressArea.finish();
     } // afterLoading
-
-    /**
-     * Sets the progress of the progress bar. The progress bar fills up
-     * as more images are downloaded.
-     *
-     * @param progress the current progress of downloading the images
-     */
-    private void setProgress(final double progress) {
-        Platform.runLater(() -> app.progressArea.progressBar.setProgress(progress));
-    } // setProgress
 } // ContentLoader
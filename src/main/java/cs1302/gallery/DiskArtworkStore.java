@@ -0,0 +1,337 @@
+package cs1302.gallery;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@code DiskArtworkStore} keeps the raw bytes of downloaded artwork in a
+ * directory so that they survive restarts. Each URL is stored in its own file
+ * named after a hash of the URL. An index file records the files in least
+ * recently used order along with their sizes. When the store grows past its
+ * byte limit, the least recently used files are deleted. The index is saved
+ * a few seconds after a change rather than on every one, and artwork files
+ * are read and written outside the store's lock, so downloads do not queue
+ * up behind each other's disk I/O.
+ */
+public class DiskArtworkStore {
+
+    /** Name of the index file inside the store directory. */
+    static final String INDEX_FILE = "index";
+
+    /** Seconds between a change and the saving of the index. */
+    static final long INDEX_DELAY_SECONDS = 5;
+
+    /** Saves the indexes of stores some time after they change. */
+    private static final ScheduledExecutorService INDEX_WRITER =
+        Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "artwork-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries;
+    private final Object indexLock;
+    private long totalBytes;
+    private long evictions;
+    private boolean saveScheduled;
+
+    /**
+     * A single stored file and the URL it belongs to.
+     */
+    private static class Entry {
+        final String url;
+        final String name;
+        final long size;
+
+        Entry(String url, String name, long size) {
+            this.url = url;
+            this.name = name;
+            this.size = size;
+        } // Entry
+    } // Entry
+
+    /**
+     * Constructs a {@code DiskArtworkStore} in the given directory and loads its
+     * index. The directory is created if it does not exist. If the directory
+     * cannot be used, the store stays empty and every lookup misses.
+     *
+     * @param directory the directory that holds the artwork files
+     * @param maxBytes the maximum number of bytes to keep on disk
+     */
+    public DiskArtworkStore(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.indexLock = new Object();
+        try {
+            Files.createDirectories(directory);
+            readIndex();
+        } catch (IOException e) {
+            // starts cold; the store is only a cache
+            entries.clear();
+            totalBytes = 0;
+        } // try
+    } // DiskArtworkStore
+
+    /**
+     * Returns the stored bytes for a URL.
+     *
+     * @param url the artwork URL
+     * @return the stored bytes, or {@code null} if the URL is not stored
+     */
+    public byte[] get(String url) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(url);
+        } // synchronized
+        if (entry == null) {
+            return null;
+        } // if
+        try {
+            return Files.readAllBytes(directory.resolve(entry.name));
+        } catch (IOException e) {
+            // the file disappeared behind our back; forgets about it
+            synchronized (this) {
+                if (entries.get(url) == entry) {
+                    remove(url);
+                    scheduleSave();
+                } // if
+            } // synchronized
+            return null;
+        } // try
+    } // get
+
+    /**
+     * Stores the bytes for a URL and evicts the least recently used files
+     * if the store is over its byte limit.
+     *
+     * @param url the artwork URL
+     * @param bytes the raw artwork bytes
+     */
+    public void put(String url, byte[] bytes) {
+        if (bytes.length > maxBytes) {
+            return;
+        } // if
+        String name = fileName(url);
+        Path temp = null;
+        try {
+            // each writer has its own temporary file, so writes of one URL cannot mix
+            temp = Files.createTempFile(directory, name, ".tmp");
+            Files.write(temp, bytes);
+            Files.move(temp, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            if (temp != null) {
+                deleteQuietly(temp.getFileName().toString());
+            } // if
+            return;
+        } // try
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            remove(url);
+            entries.put(url, new Entry(url, name, bytes.length));
+            totalBytes += bytes.length;
+
+            // forgets least recently used files until the store fits
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                Entry entry = eldest.next();
+                eldest.remove();
+                totalBytes -= entry.size;
+                evictions += 1;
+                evicted.add(entry.name);
+            } // while
+            scheduleSave();
+        } // synchronized
+        for (String old : evicted) {
+            deleteQuietly(old);
+        } // for
+    } // put
+
+    /**
+     * Returns the number of files deleted to stay within the byte limit.
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    } // getEvictions
+
+    /**
+     * Returns the number of bytes currently stored.
+     *
+     * @return the stored byte count
+     */
+    public synchronized long getSize() {
+        return totalBytes;
+    } // getSize
+
+    /**
+     * Saves the index file now. The index is also saved shortly after every
+     * {@code put}, but saving it on shutdown keeps the latest changes and the
+     * recency order of later lookups.
+     */
+    public void flush() {
+        List<String> lines;
+        synchronized (this) {
+            lines = new ArrayList<>(entries.size());
+            for (Entry entry : entries.values()) {
+                lines.add(entry.name + "\t" + entry.size + "\t" + entry.url);
+            } // for
+        } // synchronized
+        writeIndex(lines);
+    } // flush
+
+    /**
+     * Saves the index a few seconds from now, unless a save is already
+     * scheduled. Must be called while holding the lock of this store.
+     */
+    private void scheduleSave() {
+        if (saveScheduled) {
+            return;
+        } // if
+        saveScheduled = true;
+        try {
+            INDEX_WRITER.schedule(() -> {
+                synchronized (this) {
+                    saveScheduled = false;
+                } // synchronized
+                flush();
+            }, INDEX_DELAY_SECONDS, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            // the next flush saves the change
+            saveScheduled = false;
+        } // try
+    } // scheduleSave
+
+    /**
+     * Removes the entry of a URL, if any, without deleting its file.
+     *
+     * @param url the artwork URL
+     */
+    private void remove(String url) {
+        Entry old = entries.remove(url);
+        if (old != null) {
+            totalBytes -= old.size;
+        } // if
+    } // remove
+
+    /**
+     * Reads the index file. Each line holds a file name, its size and its URL
+     * separated by tabs, with the least recently used file first. The files
+     * themselves are not checked, which would cost a file system call per
+     * entry; an entry whose file has gone is dropped when it is first read.
+     *
+     * @throws IOException if the index cannot be read
+     */
+    private void readIndex() throws IOException {
+        Path index = directory.resolve(INDEX_FILE);
+        if (!Files.exists(index)) {
+            return;
+        } // if
+        try (BufferedReader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length == 3) {
+                    Entry entry = new Entry(fields[2], fields[0], Long.parseLong(fields[1]));
+                    entries.put(entry.url, entry);
+                    totalBytes += entry.size;
+                } // if
+            } // while
+        } catch (NumberFormatException e) {
+            throw new IOException("corrupt artwork index", e);
+        } // try
+    } // readIndex
+
+    /**
+     * Writes the index file, replacing the previous one atomically. Only
+     * one index is written at a time.
+     *
+     * @param lines the lines of the index, least recently used first
+     */
+    private void writeIndex(List<String> lines) {
+        Path index = directory.resolve(INDEX_FILE);
+        Path temp = directory.resolve(INDEX_FILE + ".tmp");
+        synchronized (indexLock) {
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(temp,
+                    StandardCharsets.UTF_8)) {
+                    for (String line : lines) {
+                        writer.write(line);
+                        writer.newLine();
+                    } // for
+                } // try
+                Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                // the next successful write catches up
+            } // try
+        } // synchronized
+    } // writeIndex
+
+    /**
+     * Deletes a file in the store, ignoring any error.
+     *
+     * @param name the file name
+     */
+    private void deleteQuietly(String name) {
+        try {
+            Files.deleteIfExists(directory.resolve(name));
+        } catch (IOException e) {
+            // an orphaned file is harmless
+        } // try
+    } // deleteQuietly
+
+    /**
+     * Returns the file name used for a URL. It is the hex SHA-1 hash of the URL.
+     *
+     * @param url the artwork URL
+     * @return the file name
+     */
+    static String fileName(String url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1")
+                .digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                name.append(String.format("%02x", b));
+            } // for
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-1
+            throw new IllegalStateException(e);
+        } // try
+    } // fileName
+
+    /**
+     * Returns the default store directory. It can be set with
+     * {@code -Dgallery.cache.dir} and defaults to {@code ~/.cs1302-gallery/artwork}.
+     *
+     * @return the default store directory
+     */
+    static Path defaultDirectory() {
+        String dir = System.getProperty("gallery.cache.dir");
+        if (dir != null) {
+            return Paths.get(dir);
+        } // if
+        return Paths.get(System.getProperty("user.home"), ".cs1302-gallery", "artwork");
+    } // defaultDirectory
+
+} // DiskArtworkStore
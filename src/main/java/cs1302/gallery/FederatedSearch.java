@@ -0,0 +1,380 @@
+package cs1302.gallery;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@code FederatedSearch} runs a compound query, such as
+ * {@code "pop, jazz, 1990s"}, as several searches at once and merges their
+ * artwork into one stream. Terms are separated by commas, and a term may
+ * name its own media type, as in {@code "movie:alien"}; other terms use the
+ * default. Every term is gathered by a {@link PagedSearch} on its own thread,
+ * so a slow term does not hold up the others. The URLs of the terms are
+ * interleaved, one from each term in turn, and de-duplicated across terms.
+ * The first URLs wait a moment for every term to answer, so a wall mixes all
+ * of them; after that, URLs are handed on as they land. A query with a single
+ * term is searched like before, by the {@link PagedSearch} alone.
+ */
+public class FederatedSearch {
+
+    /** Most terms of a compound query that are searched; set with {@code -Dgallery.queries}. */
+    static final int MAX_QUERIES = Integer.getInteger("gallery.queries", 6);
+
+    /** Longest wait in ms for every term to answer; set with {@code -Dgallery.merge.millis}. */
+    static final long GRACE_MILLIS = Long.getLong("gallery.merge.millis", 300);
+
+    /** Media types of the iTunes Search API that a term may name, by their lower case. */
+    static final Map<String, String> MEDIA_TYPES = new HashMap<>();
+
+    static {
+        for (String media : Arrays.asList("movie", "podcast", "music", "musicVideo", "audiobook",
+            "shortFilm", "tvShow", "software", "ebook", "all")) {
+            MEDIA_TYPES.put(media.toLowerCase(Locale.ROOT), media);
+        } // for
+    } // static
+
+    private final SearchCache searches;
+    private final PagedSearch pages;
+    private final ExecutorService pool;
+
+    /**
+     * A term of a compound query and the media type it is searched in.
+     */
+    static class Query {
+        final String term;
+        final String media;
+
+        /**
+         * Constructs a {@code Query}.
+         *
+         * @param term the search term
+         * @param media the media type it is searched in
+         */
+        Query(String term, String media) {
+            this.term = term;
+            this.media = media;
+        } // Query
+    } // Query
+
+    /**
+     * New URLs of one term, or the end of the term when {@code urls} is
+     * {@code null}.
+     */
+    private static class Arrival {
+        final int source;
+        final List<String> urls;
+        final IOException failure;
+
+        /**
+         * Constructs an {@code Arrival}.
+         *
+         * @param source the index of the term in the compound query
+         * @param urls the new URLs of the term, or {@code null} at its end
+         * @param failure why the term failed, or {@code null} if it did not
+         */
+        Arrival(int source, List<String> urls, IOException failure) {
+            this.source = source;
+            this.urls = urls;
+            this.failure = failure;
+        } // Arrival
+    } // Arrival
+
+    /**
+     * Constructs a {@code FederatedSearch}.
+     *
+     * @param searches the cache used to peek at the answers of earlier searches
+     * @param pages gathers the URLs of each term
+     */
+    public FederatedSearch(SearchCache searches, PagedSearch pages) {
+        this.searches = searches;
+        this.pages = pages;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(MAX_QUERIES, target -> {
+            Thread t = new Thread(target, "search-term-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    } // FederatedSearch
+
+    /**
+     * Gathers the artwork URLs of a compound query until {@code target}
+     * distinct URLs are found or every term runs out. Each term is first
+     * asked for an even share of the target. The share a term leaves unused,
+     * because it runs out or fails, is handed on to the terms that found all
+     * of theirs: each is searched again for more once it ends, and its pages
+     * seen before come from the search cache. The query only fails if every
+     * term fails.
+     *
+     * @param query the compound query
+     * @param media the media type of terms that do not name one
+     * @param target the number of distinct URLs wanted
+     * @param listener receives the new URLs, interleaved across terms
+     * @return the number of distinct URLs found
+     * @throws IOException if every term failed
+     * @throws InterruptedException if the search is interrupted or the listener stops it
+     */
+    public int fetch(String query, String media, int target, PagedSearch.PageListener listener)
+        throws IOException, InterruptedException {
+        List<Query> queries = parse(query, media);
+        if (queries.size() == 1) {
+            return pages.fetch(queries.get(0).term, queries.get(0).media, target, listener);
+        } // if
+
+        int terms = queries.size();
+        int share = (target + terms - 1) / terms;
+        BlockingQueue<Arrival> arrivals = new LinkedBlockingQueue<>();
+        List<Future<?>> running = new ArrayList<>(terms);
+        int[] asked = new int[terms];
+        int[] delivered = new int[terms];
+        boolean[] searching = new boolean[terms];
+        boolean[] exhausted = new boolean[terms];
+        for (int i = 0; i < terms; i++) {
+            asked[i] = share;
+            searching[i] = true;
+            running.add(submit(queries.get(i), i, share, 0, arrivals));
+        } // for
+
+        UrlDeduplicator dedup = new UrlDeduplicator(true, target);
+        List<ArrayDeque<String>> pending = new ArrayList<>(terms);
+        for (int i = 0; i < terms; i++) {
+            pending.add(new ArrayDeque<>());
+        } // for
+        boolean[] heard = new boolean[terms];
+        int answered = 0;
+        int active = terms;
+        IOException failure = null;
+        long graceEnds = 0;
+        boolean streaming = false;
+        try {
+            while (active > 0 && dedup.size() < target) {
+                // waits for the first answer, then only briefly for the other terms
+                Arrival arrival = streaming || graceEnds == 0 ? arrivals.take()
+                    : arrivals.poll(graceEnds - System.nanoTime(), TimeUnit.NANOSECONDS);
+                boolean ended = false;
+                if (arrival != null) {
+                    int source = arrival.source;
+                    if (!heard[source]) {
+                        heard[source] = true;
+                        answered++;
+                    } // if
+                    if (arrival.urls != null) {
+                        pending.get(source).addAll(arrival.urls);
+                        delivered[source] += arrival.urls.size();
+                    } else {
+                        ended = true;
+                        active--;
+                        searching[source] = false;
+                        exhausted[source] = arrival.failure != null
+                            || delivered[source] < asked[source];
+                        if (failure == null) {
+                            failure = arrival.failure;
+                        } // if
+                    } // if
+                    if (graceEnds == 0) {
+                        graceEnds = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(GRACE_MILLIS);
+                    } // if
+                } // if
+                streaming = streaming || answered == terms
+                    || System.nanoTime() - graceEnds >= 0;
+                if (streaming) {
+                    merge(pending, dedup, target, listener);
+                } // if
+                if (ended && dedup.size() < target) {
+                    // the URLs still expected fall short; asks the idle terms for the rest
+                    int spare = target - dedup.size();
+                    int takers = 0;
+                    for (int i = 0; i < terms; i++) {
+                        spare -= pending.get(i).size();
+                        if (searching[i]) {
+                            spare -= Math.max(0, asked[i] - delivered[i]);
+                        } else if (!exhausted[i]) {
+                            takers++;
+                        } // if
+                    } // for
+                    if (spare > 0 && takers > 0) {
+                        int more = (spare + takers - 1) / takers;
+                        for (int i = 0; i < terms; i++) {
+                            if (!searching[i] && !exhausted[i]) {
+                                asked[i] = delivered[i] + more;
+                                searching[i] = true;
+                                active++;
+                                running.add(submit(queries.get(i), i, asked[i], delivered[i],
+                                    arrivals));
+                            } // if
+                        } // for
+                    } // if
+                } // if
+            } // while
+        } finally {
+            // the terms still running are no longer wanted
+            for (Future<?> term : running) {
+                term.cancel(true);
+            } // for
+        } // try
+        if (dedup.size() == 0 && failure != null) {
+            throw failure;
+        } // if
+        return dedup.size();
+    } // fetch
+
+    /**
+     * Searches a term on the pool, posting its new URLs and then, however the
+     * search ends, the end of the term.
+     *
+     * @param term the term
+     * @param source the index of the term in the compound query
+     * @param want the number of distinct URLs wanted from the term
+     * @param skip the number of URLs the term already posted in earlier searches
+     * @param arrivals receives the URLs and the end of the term
+     * @return the pending search
+     */
+    private Future<?> submit(Query term, int source, int want, int skip,
+        BlockingQueue<Arrival> arrivals) {
+        return pool.submit(() -> {
+            IOException failure = null;
+            int[] seen = {0};
+            try {
+                pages.fetch(term.term, term.media, want, urls -> {
+                    // a term searched again first finds the URLs it posted before
+                    int from = Math.min(urls.size(), Math.max(0, skip - seen[0]));
+                    seen[0] += urls.size();
+                    if (from < urls.size()) {
+                        arrivals.put(new Arrival(source,
+                            new ArrayList<>(urls.subList(from, urls.size())), null));
+                    } // if
+                });
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new IOException(e);
+            } finally {
+                // never blocks, so the merge hears of the end even if interrupted
+                arrivals.add(new Arrival(source, null, failure));
+            } // try
+            return null;
+        });
+    } // submit
+
+    /**
+     * Takes the URLs waiting in every term, one from each term in turn, and
+     * hands the new ones to the listener.
+     *
+     * @param pending the URLs of each term not yet merged
+     * @param dedup the URLs merged so far
+     * @param target the number of distinct URLs wanted
+     * @param listener receives the new URLs
+     * @throws InterruptedException if the listener stops the search
+     */
+    private static void merge(List<ArrayDeque<String>> pending, UrlDeduplicator dedup,
+        int target, PagedSearch.PageListener listener) throws InterruptedException {
+        GalleryMetrics metrics = GalleryMetrics.global();
+        long deduping = metrics.start();
+        List<String> fresh = new ArrayList<>();
+        boolean more = true;
+        while (more && dedup.size() < target) {
+            more = false;
+            for (ArrayDeque<String> term : pending) {
+                String url = term.poll();
+                if (url != null) {
+                    more = true;
+                    if (dedup.add(url)) {
+                        fresh.add(url);
+                    } // if
+                } // if
+            } // for
+        } // while
+        metrics.stop(GalleryMetrics.Phase.DEDUP, deduping);
+        if (!fresh.isEmpty()) {
+            listener.onPage(fresh);
+        } // if
+    } // merge
+
+    /**
+     * Returns cached artwork URLs for a compound query without searching,
+     * interleaved across its terms like a fetch.
+     *
+     * @param query the compound query, possibly still being typed
+     * @param media the media type of terms that do not name one
+     * @param limit the page size of the searches
+     * @return the URLs, or {@code null} if no term has a cached answer
+     * @see SearchCache#peek
+     */
+    public List<String> peek(String query, String media, int limit) {
+        List<Query> queries = parse(query, media);
+        if (queries.size() == 1) {
+            return searches.peek(queries.get(0).term, queries.get(0).media, limit);
+        } // if
+        List<ArrayDeque<String>> pending = new ArrayList<>(queries.size());
+        for (Query term : queries) {
+            List<String> urls = searches.peek(term.term, term.media, limit);
+            if (urls != null) {
+                pending.add(new ArrayDeque<>(urls));
+            } // if
+        } // for
+        if (pending.isEmpty()) {
+            return null;
+        } // if
+        UrlDeduplicator dedup = new UrlDeduplicator(true, limit);
+        boolean more = true;
+        while (more) {
+            more = false;
+            for (ArrayDeque<String> term : pending) {
+                String url = term.poll();
+                if (url != null) {
+                    more = true;
+                    dedup.add(url);
+                } // if
+            } // for
+        } // while
+        return dedup.toList();
+    } // peek
+
+    /**
+     * Splits a compound query into its terms. Blank and repeated terms are
+     * dropped, and only the first {@link #MAX_QUERIES} are kept. A term
+     * starting with a media type and a colon is searched in that media type.
+     *
+     * @param query the compound query
+     * @param media the media type of terms that do not name one
+     * @return the terms, at least one
+     */
+    static List<Query> parse(String query, String media) {
+        Map<String, Query> queries = new LinkedHashMap<>();
+        for (String part : query.split(",")) {
+            String term = part.trim();
+            String termMedia = media;
+            int colon = term.indexOf(':');
+            String named = colon > 0
+                ? MEDIA_TYPES.get(term.substring(0, colon).trim().toLowerCase(Locale.ROOT)) : null;
+            if (named != null) {
+                // the API only knows the camel case names, such as musicVideo
+                termMedia = named;
+                term = term.substring(colon + 1).trim();
+            } // if
+            String key = termMedia + ":" + SearchCache.normalize(term);
+            if (!term.isEmpty() && queries.size() < MAX_QUERIES) {
+                queries.putIfAbsent(key, new Query(term, termMedia));
+            } // if
+        } // for
+        if (queries.isEmpty()) {
+            // nothing but commas; searches the query as it is, like before
+            return List.of(new Query(query, media));
+        } // if
+        return new ArrayList<>(queries.values());
+    } // parse
+
+} // FederatedSearch
@@ -0,0 +1,76 @@
+package cs1302.gallery;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An {@code FxUpdateQueue} collects scene graph updates posted from any thread
+ * and applies them on the JavaFX Application Thread in batches. Instead of one
+ * {@code Platform.runLater} call per update, all updates posted before a pulse
+ * are applied together in that pulse. The underlying {@code AnimationTimer}
+ * only runs while there is work, so an idle queue costs nothing.
+ */
+public class FxUpdateQueue {
+
+    private final ConcurrentLinkedQueue<Runnable> updates;
+    private final AtomicBoolean scheduled;
+    private final AnimationTimer timer;
+
+    /**
+     * Constructs an empty {@code FxUpdateQueue}.
+     */
+    public FxUpdateQueue() {
+        updates = new ConcurrentLinkedQueue<>();
+        scheduled = new AtomicBoolean(false);
+        timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                drain();
+            } // handle
+        };
+    } // FxUpdateQueue
+
+    /**
+     * Posts an update to be applied on the JavaFX Application Thread during
+     * the next pulse. Updates are applied in the order they were posted.
+     *
+     * @param update the update to apply
+     */
+    public void post(Runnable update) {
+        updates.add(update);
+        // only the first update since the last batch wakes the timer
+        if (scheduled.compareAndSet(false, true)) {
+            if (Platform.isFxApplicationThread()) {
+                timer.start();
+            } else {
+                Platform.runLater(timer::start);
+            } // if
+        } // if
+    } // post
+
+    /**
+     * Applies the updates pending at the start of this pulse. Updates posted
+     * while draining wait for the next pulse. Stops the timer once the queue
+     * is empty, restarting it right away if an update slipped in meanwhile.
+     */
+    private void drain() {
+        GalleryMetrics metrics = GalleryMetrics.global();
+        long started = metrics.start();
+        int pending = updates.size();
+        for (int i = 0; i < pending; i++) {
+            updates.poll().run();
+        } // for
+        metrics.stop(GalleryMetrics.Phase.APPLY, started);
+        if (!updates.isEmpty()) {
+            return;
+        } // if
+        timer.stop();
+        scheduled.set(false);
+        if (!updates.isEmpty() && scheduled.compareAndSet(false, true)) {
+            timer.start();
+        } // if
+    } // drain
+
+} // FxUpdateQueue
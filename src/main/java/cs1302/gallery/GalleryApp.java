@@ -12,7 +12,8 @@ import javafx.stage.Stage;
  * to search for artwork using a text field and can pause/resume
  * random image replacement. If random image replacement is on,
  * then a random image is replaced with a random image that is currently
- * not shown every 2 seconds.
+ * not shown every 2 seconds, or as often as {@code -Dgallery.replace.millis}
+ * says.
  */
 public class GalleryApp extends Application {
 
@@ -23,6 +24,8 @@ public class GalleryApp extends Application {
     Toolbar toolBar;
     ContentLoader contentLoader;
     ProgressArea progressArea;
+    TaskScheduler tasks;
+    MetricsExporter metricsExporter;
 
     /**
      * Entry point for the iTunes gallery application.
@@ -31,11 +34,18 @@ public class GalleryApp extends Application {
      */
     @Override
     public void start(Stage stage) {
+        // publishes load metrics over JMX and, if configured, to a log or CSV file
+        GalleryMetrics.register();
+        metricsExporter = new MetricsExporter(GalleryMetrics.global());
+        metricsExporter.start();
+
         // Initializes components for the scene
+        tasks = new TaskScheduler();
         root = new VBox();
         menuLoader = new MenuLoader(this);
-        toolBar = new Toolbar(this);
+        // the toolbar configures random replacement of the content loader's tiles
         contentLoader = new ContentLoader(this);
+        toolBar = new Toolbar(this);
         progressArea = new ProgressArea(this);
 
         // adds components to the root and sets the root to the scene
@@ -50,23 +60,55 @@ public class GalleryApp extends Application {
         stage.sizeToScene();
         stage.show();
 
-        // Loads images from the default query after showing the stage
+        // requests sharper artwork while the window is on a high-density display
+        contentLoader.setOutputScale(stage.getOutputScaleX());
+        stage.outputScaleXProperty().addListener((observable, oldScale, newScale) ->
+            contentLoader.setOutputScale(newScale.doubleValue()));
+
+        // shows the last wall of the default query at once, then refreshes it
         String defaultQuery = DEFAULT_QUERY;
-        runNow(() -> contentLoader.loadContent(defaultQuery));
+        contentLoader.showPacked(defaultQuery);
+        load(defaultQuery);
     } // start
 
+    /**
+     * Loads the artwork of a query in the background. A load that is
+     * still running for a different query is superseded, while a load
+     * for the same query is left to finish instead of being started twice.
+     *
+     * @param query the search query
+     */
+    void load(String query) {
+        String key = SearchCache.key(query, ContentLoader.MEDIA, ContentLoader.LIMIT);
+        tasks.submitLatest("load", key, () -> contentLoader.loadContent(query));
+    } // load
 
     /**
-     * Creates and starts a daemon thread. The method comes
-     * from the Brief Introduction to Java Threads reading.
+     * Shows cached artwork for a query that is still being typed, and
+     * cancels a load for any other query, since it is no longer wanted.
+     * Nothing is searched; the load follows once typing pauses. If the query
+     * is already loading, the load is left to fill the gallery.
      *
-     * @param target a {@code Runnable} object which has a run method
-     * which is executed when the thread is started
+     * @param query the search query typed so far
      */
-    public static void runNow(Runnable target) {
-        Thread t = new Thread(target);
-        t.setDaemon(true);
-        t.start();
-    } // runNow
+    void preview(String query) {
+        String key = SearchCache.key(query, ContentLoader.MEDIA, ContentLoader.LIMIT);
+        if (!tasks.cancelLatest("load", key)) {
+            contentLoader.preview(query);
+        } // if
+    } // preview
+
+    /**
+     * Called when the application exits. Cancels background work, saves the
+     * artwork cache index and writes the last metrics snapshot.
+     *
+     * {@inheritdoc}
+     */
+    @Override
+    public void stop() {
+        tasks.shutdown();
+        contentLoader.shutdown();
+        metricsExporter.stop();
+    } // stop
 
 } // GalleryApp
@@ -1,17 +1,25 @@
 package cs1302.gallery;
 
 import javafx.application.Application;
+import java.util.Arrays;
 
 /** 
- * Driver for the {@code GalleryApp} class.
+ * Driver for the {@code GalleryApp} class. With {@code --batch} as the first
+ * argument, it writes contact sheets with a {@link BatchExporter} instead,
+ * which needs no display.
  */
 public class GalleryDriver {
 
     /**
      * Main entry-point into the application.
      * @param args the command-line arguments.
+     * @throws Exception if the batch export fails
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchExporter.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        } // if
         try {
             Application.launch(GalleryApp.class, args);
         } catch (UnsupportedOperationException e) {
@@ -0,0 +1,189 @@
+package cs1302.gallery;
+
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.HBox;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * A {@code GalleryGrid} is a scrollable view of every artwork found by a query.
+ * It is a {@code ListView} whose rows each show a few artwork images, so only
+ * the rows in the viewport have cells. Cells are recycled while scrolling: when
+ * a cell is given a new row, the downloads of its old row are cancelled and its
+ * images released, and the images of the new row are loaded on demand. Memory
+ * therefore depends on the size of the viewport, not on the number of results.
+ */
+public class GalleryGrid extends ListView<Integer> {
+
+    /** Number of artwork images per row. */
+    static final int COLUMNS = 5;
+
+    /** Space between artwork images, in pixels. */
+    static final double GAP = 2;
+
+    private final ArtworkDownloader downloader;
+    private final ArtworkResolution resolution;
+    private final FxUpdateQueue updates;
+    private final Image placeholder;
+    private List<String> urls;
+
+    /**
+     * Constructs an empty {@code GalleryGrid}.
+     *
+     * @param downloader downloads the artwork of rows as they become visible
+     * @param resolution decides the size of the artwork requested
+     * @param updates applies downloaded images on the JavaFX Application Thread
+     * @param placeholder shown in a cell until its artwork arrives
+     */
+    public GalleryGrid(ArtworkDownloader downloader, ArtworkResolution resolution,
+        FxUpdateQueue updates, Image placeholder) {
+        super();
+        this.downloader = downloader;
+        this.resolution = resolution;
+        this.updates = updates;
+        this.placeholder = placeholder;
+        this.urls = Collections.emptyList();
+
+        // every row has the same height, which keeps scrolling cheap
+        setFixedCellSize(ArtworkDownloader.IMAGE_SIZE + GAP * 2);
+        setCellFactory(view -> new RowCell());
+    } // GalleryGrid
+
+    /**
+     * Replaces the artwork shown by the grid. Must be called on the JavaFX
+     * Application Thread.
+     *
+     * @param artworkUrls the artwork URLs, in display order
+     */
+    public void setUrls(List<String> artworkUrls) {
+        urls = artworkUrls;
+        int rows = (artworkUrls.size() + COLUMNS - 1) / COLUMNS;
+        List<Integer> items = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            items.add(row);
+        } // for
+        getItems().setAll(items);
+        scrollTo(0);
+    } // setUrls
+
+    /**
+     * Adds artwork to the end of the grid without moving the viewport.
+     * Must be called on the JavaFX Application Thread.
+     *
+     * @param more the artwork URLs to add, in display order
+     */
+    public void addUrls(List<String> more) {
+        int oldRows = getItems().size();
+        boolean partial = urls.size() % COLUMNS != 0;
+        List<String> combined = new ArrayList<>(urls.size() + more.size());
+        combined.addAll(urls);
+        combined.addAll(more);
+        urls = combined;
+        int rows = (combined.size() + COLUMNS - 1) / COLUMNS;
+        List<Integer> items = new ArrayList<>(rows - oldRows);
+        for (int row = oldRows; row < rows; row++) {
+            items.add(row);
+        } // for
+        getItems().addAll(items);
+        if (partial) {
+            // the last old row needs its new artwork
+            refresh();
+        } // if
+    } // addUrls
+
+    /**
+     * A cell showing one row of artwork. It owns one image view per column
+     * and the downloads currently filling them.
+     */
+    private class RowCell extends ListCell<Integer> {
+
+        private final ImageView[] views;
+        private final Future<?>[] pending;
+        private final HBox box;
+        private int shows;
+
+        /**
+         * Constructs an empty {@code RowCell}.
+         */
+        RowCell() {
+            views = new ImageView[COLUMNS];
+            pending = new Future<?>[COLUMNS];
+            box = new HBox(GAP);
+            for (int c = 0; c < COLUMNS; c++) {
+                views[c] = new ImageView();
+                views[c].setFitWidth(ArtworkDownloader.IMAGE_SIZE);
+                views[c].setFitHeight(ArtworkDownloader.IMAGE_SIZE);
+                box.getChildren().add(views[c]);
+            } // for
+        } // RowCell
+
+        /**
+         * Shows a new row in this cell, releasing the previous one.
+         *
+         * {@inheritdoc}
+         */
+        @Override
+        protected void updateItem(Integer row, boolean empty) {
+            super.updateItem(row, empty);
+            release();
+            if (empty || row == null) {
+                setGraphic(null);
+                return;
+            } // if
+            List<String> current = urls;
+            for (int c = 0; c < COLUMNS; c++) {
+                int index = row * COLUMNS + c;
+                if (index < current.size()) {
+                    load(c, current.get(index));
+                } // if
+            } // for
+            setGraphic(box);
+        } // updateItem
+
+        /**
+         * Fills one column of this cell, right away if the artwork is already
+         * in memory and otherwise once it has been downloaded.
+         *
+         * @param column the column to fill
+         * @param url the artwork URL
+         */
+        private void load(int column, String url) {
+            int pixels = resolution.pixels();
+            String sized = ArtworkResolution.resize(url, pixels);
+            Image cached = downloader.cached(sized);
+            if (cached != null) {
+                views[column].setImage(cached);
+                return;
+            } // if
+            views[column].setImage(placeholder);
+            int token = shows;
+            pending[column] = downloader.downloadOne(sized, pixels, artImage -> updates.post(() -> {
+                // ignores images for what this cell showed before, even the same row
+                if (artImage != null && token == shows) {
+                    views[column].setImage(artImage);
+                } // if
+            }));
+        } // load
+
+        /**
+         * Cancels the downloads of this cell and drops its images. Downloads
+         * that finish anyway are ignored.
+         */
+        private void release() {
+            shows++;
+            for (int c = 0; c < COLUMNS; c++) {
+                if (pending[c] != null) {
+                    pending[c].cancel(true);
+                    pending[c] = null;
+                } // if
+                views[c].setImage(null);
+            } // for
+        } // release
+    } // RowCell
+
+} // GalleryGrid
@@ -0,0 +1,302 @@
+package cs1302.gallery;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * {@code GalleryMetrics} times the phases of a load and counts what happened
+ * along the way, so a slow load can be traced to the network, to decoding or
+ * to the JavaFX Application Thread. Recording is lock-free and cheap enough
+ * for the hot paths it sits in. There is one instance for the application;
+ * it is published over JMX by {@link #register()} and written out
+ * periodically by a {@link MetricsExporter}.
+ */
+public class GalleryMetrics implements GalleryMetricsMXBean {
+
+    /** Name under which the metrics are registered with the platform MBean server. */
+    static final String OBJECT_NAME = "cs1302.gallery:type=Metrics";
+
+    /**
+     * The timed phases of a load.
+     */
+    public enum Phase {
+        /** A whole load, from the query to the last image. */
+        LOAD,
+        /** A search request, until the response headers arrive. */
+        SEARCH,
+        /** Reading and parsing the body of a search response. */
+        PARSE,
+        /** De-duplicating the URLs of a page. */
+        DEDUP,
+        /** Reading the bytes of one image from the network. */
+        DOWNLOAD,
+        /** Decoding one image. */
+        DECODE,
+        /** Applying a batch of updates on the JavaFX Application Thread. */
+        APPLY
+    } // Phase
+
+    /**
+     * The counted events of a load.
+     */
+    public enum Counter {
+        /** Searches that failed. */
+        SEARCH_FAILURES,
+        /** Image downloads that failed. */
+        DOWNLOAD_FAILURES,
+        /** Downloaded images that could not be decoded. */
+        DECODE_FAILURES,
+        /** Images found decoded in memory. */
+        MEMORY_HITS,
+        /** Images whose bytes were found off the heap or on disk. */
+        DISK_HITS,
+        /** Images whose bytes were read from the network. */
+        NETWORK_FETCHES,
+        /** Bytes of images read from the network. */
+        BYTES_DOWNLOADED,
+        /** Times decoded images were released because the heap was nearly full. */
+        PRESSURE_RELEASES,
+        /** HTTP requests sent again after a failure. */
+        HTTP_RETRIES,
+        /** HTTP responses in which a host said it was asked too often. */
+        HTTP_THROTTLED,
+        /** Images that shared the decoded image of identical bytes under another URL. */
+        DUPLICATES_SHARED,
+        /** Images not shown because they look the same as one already shown. */
+        DUPLICATES_DROPPED
+    } // Counter
+
+    private static final GalleryMetrics GLOBAL = new GalleryMetrics();
+
+    private final LongAdder[] counts;
+    private final LongAdder[] totals;
+    private final AtomicLong[] maxes;
+    private final LongAdder[] counters;
+
+    /**
+     * Constructs a {@code GalleryMetrics} with every timer and counter at zero.
+     */
+    GalleryMetrics() {
+        int phases = Phase.values().length;
+        counts = new LongAdder[phases];
+        totals = new LongAdder[phases];
+        maxes = new AtomicLong[phases];
+        for (int i = 0; i < phases; i++) {
+            counts[i] = new LongAdder();
+            totals[i] = new LongAdder();
+            maxes[i] = new AtomicLong();
+        } // for
+        counters = new LongAdder[Counter.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        } // for
+    } // GalleryMetrics
+
+    /**
+     * Returns the metrics of the application.
+     *
+     * @return the metrics
+     */
+    public static GalleryMetrics global() {
+        return GLOBAL;
+    } // global
+
+    /**
+     * Registers the metrics of the application with the platform MBean
+     * server. Registering more than once does nothing.
+     */
+    public static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(GLOBAL, name);
+            } // if
+        } catch (JMException e) {
+            // metrics are optional; the gallery works without them
+        } // try
+    } // register
+
+    /**
+     * Returns a timestamp to pass to {@link #stop} when the phase ends.
+     *
+     * @return the current value of {@code System.nanoTime()}
+     */
+    public long start() {
+        return System.nanoTime();
+    } // start
+
+    /**
+     * Records a phase that began at the given timestamp and ends now.
+     *
+     * @param phase the phase
+     * @param startNanos the timestamp returned by {@link #start}
+     */
+    public void stop(Phase phase, long startNanos) {
+        record(phase, System.nanoTime() - startNanos);
+    } // stop
+
+    /**
+     * Records one run of a phase.
+     *
+     * @param phase the phase
+     * @param nanos how long it took, in nanoseconds
+     */
+    public void record(Phase phase, long nanos) {
+        int i = phase.ordinal();
+        counts[i].increment();
+        totals[i].add(nanos);
+        maxes[i].accumulateAndGet(nanos, Math::max);
+    } // record
+
+    /**
+     * Adds one to a counter.
+     *
+     * @param counter the counter
+     */
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    } // increment
+
+    /**
+     * Adds to a counter.
+     *
+     * @param counter the counter
+     * @param amount the amount to add
+     */
+    public void add(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    } // add
+
+    /**
+     * Returns how many times a phase has run.
+     *
+     * @param phase the phase
+     * @return the number of runs
+     */
+    public long getCount(Phase phase) {
+        return counts[phase.ordinal()].sum();
+    } // getCount
+
+    /**
+     * Returns the total time spent in a phase.
+     *
+     * @param phase the phase
+     * @return the total in nanoseconds
+     */
+    public long getTotalNanos(Phase phase) {
+        return totals[phase.ordinal()].sum();
+    } // getTotalNanos
+
+    /**
+     * Returns the longest run of a phase.
+     *
+     * @param phase the phase
+     * @return the longest run in nanoseconds
+     */
+    public long getMaxNanos(Phase phase) {
+        return maxes[phase.ordinal()].get();
+    } // getMaxNanos
+
+    /**
+     * Returns the value of a counter.
+     *
+     * @param counter the counter
+     * @return its value
+     */
+    public long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    } // get
+
+    /**
+     * Returns the mean duration of a phase.
+     *
+     * @param phase the phase
+     * @return the mean in milliseconds, or 0 if the phase never ran
+     */
+    public double getMeanMillis(Phase phase) {
+        long count = getCount(phase);
+        return count == 0 ? 0 : getTotalNanos(phase) / 1e6 / count;
+    } // getMeanMillis
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getPhaseCounts() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            map.put(name(phase), getCount(phase));
+        } // for
+        return map;
+    } // getPhaseCounts
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Double> getPhaseMeanMillis() {
+        Map<String, Double> map = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            map.put(name(phase), getMeanMillis(phase));
+        } // for
+        return map;
+    } // getPhaseMeanMillis
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Double> getPhaseMaxMillis() {
+        Map<String, Double> map = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            map.put(name(phase), getMaxNanos(phase) / 1e6);
+        } // for
+        return map;
+    } // getPhaseMaxMillis
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (Counter counter : Counter.values()) {
+            map.put(name(counter), get(counter));
+        } // for
+        return map;
+    } // getCounters
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i].reset();
+            totals[i].reset();
+            maxes[i].set(0);
+        } // for
+        for (LongAdder counter : counters) {
+            counter.reset();
+        } // for
+    } // reset
+
+    /**
+     * Returns the name a phase or counter is published under.
+     *
+     * @param value the phase or counter
+     * @return its lower-case name
+     */
+    static String name(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    } // name
+
+} // GalleryMetrics
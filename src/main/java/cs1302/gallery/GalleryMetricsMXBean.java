@@ -0,0 +1,45 @@
+package cs1302.gallery;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link GalleryMetrics}, so the timers and
+ * counters of a running gallery can be watched with JConsole or any other
+ * JMX client. Every map is keyed by the lower-case name of a phase or counter.
+ */
+public interface GalleryMetricsMXBean {
+
+    /**
+     * Returns how many times each phase has run.
+     *
+     * @return the number of runs of each phase
+     */
+    Map<String, Long> getPhaseCounts();
+
+    /**
+     * Returns the mean duration of each phase.
+     *
+     * @return the mean duration of each phase in milliseconds
+     */
+    Map<String, Double> getPhaseMeanMillis();
+
+    /**
+     * Returns the longest duration of each phase.
+     *
+     * @return the longest duration of each phase in milliseconds
+     */
+    Map<String, Double> getPhaseMaxMillis();
+
+    /**
+     * Returns the value of each counter.
+     *
+     * @return the counters
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * Sets every timer and counter back to zero.
+     */
+    void reset();
+
+} // GalleryMetricsMXBean
@@ -0,0 +1,387 @@
+package cs1302.gallery;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An {@code HttpTransport} sends the GET requests of the gallery, both
+ * searches and artwork. It keeps one {@link HttpClient} whose connections
+ * are pooled and reused, and which speaks HTTP/2 to servers that support it,
+ * so many downloads from one host share a few connections. Each host has a
+ * budget of requests, kept by a {@link RequestScheduler}, so a burst of
+ * downloads does not swamp it and the most urgent requests go first. Every
+ * request has a deadline that covers both waiting for the response and
+ * reading its body, so a stalled server fails a request instead of hanging
+ * it. Requests that fail with an I/O error or a 5xx status are retried after
+ * a jittered, growing delay, and requests the host throttled with a 429 or
+ * 403 status are retried once its pause is over. Responses may be
+ * gzip-compressed.
+ */
+public class HttpTransport {
+
+    /** Requests in flight per host; set with {@code -Dgallery.http.perHost}. */
+    static final int PER_HOST = Integer.getInteger("gallery.http.perHost", 6);
+
+    /** Retries of a failed request; set with {@code -Dgallery.http.retries}. */
+    static final int RETRIES = Integer.getInteger("gallery.http.retries", 2);
+
+    /** Delay before the first retry in milliseconds; later retries wait twice as long. */
+    static final long BACKOFF_MILLIS = 200;
+
+    /** The status of a response to a client that sent too many requests. */
+    static final int STATUS_TOO_MANY_REQUESTS = 429;
+
+    /** Closes the bodies of responses whose deadline has passed. */
+    private static final ScheduledExecutorService DEADLINES =
+        Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "http-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private final HttpClient client;
+    private final Duration timeout;
+    private final int retries;
+    private final RequestScheduler scheduler;
+
+    /**
+     * A response whose body is being read. Closing it closes the body and
+     * lets another request to the same host start.
+     */
+    public static class Response implements AutoCloseable {
+        final int status;
+        final HttpHeaders headers;
+        final InputStream body;
+
+        /**
+         * Constructs a {@code Response}.
+         *
+         * @param status the HTTP status code
+         * @param headers the response headers
+         * @param body the decoded response body
+         */
+        Response(int status, HttpHeaders headers, InputStream body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        } // Response
+
+        /**
+         * Returns the first value of a response header.
+         *
+         * @param name the header name, in any case
+         * @return the value, or {@code null} if the header is missing
+         */
+        String header(String name) {
+            return headers.firstValue(name).orElse(null);
+        } // header
+
+        /**
+         * Closes the body of this response.
+         *
+         * @throws IOException if the body cannot be closed
+         */
+        @Override
+        public void close() throws IOException {
+            body.close();
+        } // close
+    } // Response
+
+    /**
+     * Constructs an {@code HttpTransport} with the default limits.
+     *
+     * @param timeout the connect timeout and the deadline of each request, in milliseconds
+     */
+    public HttpTransport(int timeout) {
+        this(timeout, RETRIES, new RequestScheduler(PER_HOST, RequestScheduler.RATE,
+            RequestScheduler.BURST));
+    } // HttpTransport
+
+    /**
+     * Constructs an {@code HttpTransport}.
+     *
+     * @param timeout the connect timeout and the deadline of each request, in milliseconds
+     * @param retries the number of times a failed request is retried
+     * @param scheduler keeps the budget of each host
+     */
+    public HttpTransport(int timeout, int retries, RequestScheduler scheduler) {
+        this.timeout = Duration.ofMillis(timeout);
+        this.retries = Math.max(0, retries);
+        this.scheduler = scheduler;
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(this.timeout)
+            .build();
+    } // HttpTransport
+
+    /**
+     * Sends a GET request with the priority of the calling thread, or
+     * {@link RequestScheduler.Priority#VISIBLE} if it has none, retrying it
+     * if it fails.
+     *
+     * @param url the URL to get
+     * @param headers extra request headers as name and value pairs, or none
+     * @return the response, with its body ready to be read
+     * @throws IOException if the request still fails after its retries
+     * @see #get(String, RequestScheduler.Priority, String...)
+     */
+    public Response get(String url, String... headers) throws IOException {
+        return get(url, RequestScheduler.current(RequestScheduler.Priority.VISIBLE), headers);
+    } // get
+
+    /**
+     * Sends a GET request, retrying it if it fails. The request waits for
+     * its host's budget, behind any more urgent requests to the same host.
+     * The caller must close the response, which holds one of the host's
+     * slots until then. Statuses other than 5xx, 429 and 403 are returned
+     * for the caller to handle, and those are too once the retries run out.
+     *
+     * @param url the URL to get
+     * @param priority the priority of the request
+     * @param headers extra request headers as name and value pairs, or none
+     * @return the response, with its body ready to be read
+     * @throws IOException if the request still fails after its retries
+     */
+    public Response get(String url, RequestScheduler.Priority priority, String... headers)
+        throws IOException {
+        URI uri = URI.create(url);
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+            .timeout(timeout)
+            .header("Accept-Encoding", "gzip");
+        for (int i = 0; i + 1 < headers.length; i += 2) {
+            builder.header(headers[i], headers[i + 1]);
+        } // for
+        HttpRequest request = builder.GET().build();
+
+        RequestScheduler.Host host = scheduler.host(String.valueOf(uri.getAuthority()));
+        for (int attempt = 0; ; attempt++) {
+            host.acquire(priority);
+            HttpResponse<InputStream> response;
+            try {
+                response = send(request);
+            } catch (InterruptedIOException | RuntimeException e) {
+                host.release();
+                throw e;
+            } catch (IOException e) {
+                host.release();
+                if (attempt >= retries || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                } // if
+                GalleryMetrics.global().increment(GalleryMetrics.Counter.HTTP_RETRIES);
+                backOff(attempt);
+                continue;
+            } // try
+            int status = response.statusCode();
+            boolean throttled = status == STATUS_TOO_MANY_REQUESTS
+                || status == HttpURLConnection.HTTP_FORBIDDEN;
+            if (throttled) {
+                host.throttle(retryAfter(response.headers()));
+            } else {
+                host.succeeded();
+            } // if
+            if ((!throttled && status < 500) || attempt >= retries) {
+                // from here on the body gives the slot back when it is closed
+                return new Response(status, response.headers(), open(response, host));
+            } // if
+            response.body().close();
+            host.release();
+            GalleryMetrics.global().increment(GalleryMetrics.Counter.HTTP_RETRIES);
+            if (!throttled) {
+                // the server is struggling; gives it a moment before asking again
+                backOff(attempt);
+            } // if
+            // a throttled host makes the retry wait until its pause is over
+        } // for
+    } // get
+
+    /**
+     * Sends a request once.
+     *
+     * @param request the request
+     * @return the response, whose body has not been read
+     * @throws IOException if the request fails with an I/O error
+     */
+    private HttpResponse<InputStream> send(HttpRequest request) throws IOException {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted requesting " + request.uri());
+        } // try
+    } // send
+
+    /**
+     * Reads how long a throttled response asks the client to wait. The
+     * {@code Retry-After} header holds either a number of seconds or a date.
+     *
+     * @param headers the response headers
+     * @return the wait in milliseconds, or -1 if the header is missing or unreadable
+     */
+    static long retryAfter(HttpHeaders headers) {
+        String value = headers.firstValue("Retry-After").orElse(null);
+        if (value == null) {
+            return -1;
+        } // if
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            // not a number of seconds, so it should be a date
+        } // try
+        try {
+            ZonedDateTime at = ZonedDateTime.parse(value.trim(),
+                DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(), at).toMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        } // try
+    } // retryAfter
+
+    /**
+     * Waits before a retry. The delay doubles with each attempt and is
+     * picked at random from its upper half, so clients that failed together
+     * do not retry together.
+     *
+     * @param attempt the number of the attempt that failed, from 0
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    private static void backOff(int attempt) throws InterruptedIOException {
+        long delay = BACKOFF_MILLIS << Math.min(attempt, 10);
+        try {
+            Thread.sleep(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted before retrying");
+        } // try
+    } // backOff
+
+    /**
+     * Prepares the body of a response to be read. The body is closed when
+     * the deadline passes, which fails a read that is still waiting, and
+     * closing it returns the host's slot. A gzip-compressed body is
+     * decompressed.
+     *
+     * @param response the response
+     * @param host the host the response came from
+     * @return the body to read
+     * @throws IOException if the compressed body cannot be read
+     */
+    private InputStream open(HttpResponse<InputStream> response, RequestScheduler.Host host)
+        throws IOException {
+        DeadlineStream body = new DeadlineStream(response.body(), host);
+        body.deadline = DEADLINES.schedule(body::expire, timeout.toMillis(),
+            TimeUnit.MILLISECONDS);
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        if (encoding.equalsIgnoreCase("gzip")) {
+            try {
+                return new GZIPInputStream(body);
+            } catch (IOException e) {
+                body.close();
+                throw e;
+            } // try
+        } // if
+        return body;
+    } // open
+
+    /**
+     * The body of a response with a deadline. When the deadline passes, the
+     * body is closed under the reader, which then fails with a timeout.
+     * Closing the body returns the slot of its host exactly once.
+     */
+    private static class DeadlineStream extends FilterInputStream {
+        private final RequestScheduler.Host host;
+        private final AtomicBoolean closed;
+        private volatile boolean expired;
+        private volatile ScheduledFuture<?> deadline;
+
+        /**
+         * Constructs a {@code DeadlineStream}.
+         *
+         * @param raw the body as received
+         * @param host the host the body comes from
+         */
+        DeadlineStream(InputStream raw, RequestScheduler.Host host) {
+            super(raw);
+            this.host = host;
+            this.closed = new AtomicBoolean();
+        } // DeadlineStream
+
+        /**
+         * Closes the body because its deadline has passed.
+         */
+        void expire() {
+            expired = true;
+            try {
+                close();
+            } catch (IOException e) {
+                // nothing more can be done for a stalled response
+            } // try
+        } // expire
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                throw timedOut(e);
+            } // try
+        } // read
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return super.read(b, off, len);
+            } catch (IOException e) {
+                throw timedOut(e);
+            } // try
+        } // read
+
+        @Override
+        public void close() throws IOException {
+            if (closed.compareAndSet(false, true)) {
+                ScheduledFuture<?> pending = deadline;
+                if (pending != null) {
+                    pending.cancel(false);
+                } // if
+                host.release();
+            } // if
+            super.close();
+        } // close
+
+        /**
+         * Explains a failed read that was caused by the deadline.
+         *
+         * @param e the exception the read failed with
+         * @return a timeout if the deadline passed, or else {@code e}
+         */
+        private IOException timedOut(IOException e) {
+            if (!expired) {
+                return e;
+            } // if
+            HttpTimeoutException timeout = new HttpTimeoutException("response body timed out");
+            timeout.initCause(e);
+            return timeout;
+        } // timedOut
+    } // DeadlineStream
+
+} // HttpTransport
@@ -0,0 +1,170 @@
+package cs1302.gallery;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An {@code ItunesSource} is the default {@link ArtworkSource}. It sends
+ * queries to the iTunes Search API and extracts the distinct artwork URLs of
+ * the results with an {@link ArtworkUrlExtractor}. It supports conditional
+ * requests, so a previous answer can be revalidated using its {@code ETag} or
+ * {@code Last-Modified} header when the server provides them. Searches and
+ * artwork share one {@link HttpTransport}, so they reuse its connections,
+ * deadlines and retries. Any server that speaks the same protocol can stand
+ * in for Apple's, such as a {@link StubArtworkServer} during offline testing.
+ */
+public class ItunesSource implements ArtworkSource {
+
+    /** The iTunes Search API endpoint. */
+    static final String ENDPOINT = "https://itunes.apple.com/search";
+
+    /** Endpoint searched by default; set with {@code -Dgallery.endpoint}. */
+    static final String DEFAULT_ENDPOINT = System.getProperty("gallery.endpoint", ENDPOINT);
+
+    /** Size of the buffer used to read a response, in characters. */
+    static final int BUFFER_SIZE = 16 * 1024;
+
+    private final String endpoint;
+    private final HttpTransport http;
+    private final int maxUrls;
+
+    /**
+     * Constructs an {@code ItunesSource} that searches the default endpoint.
+     *
+     * @param timeout the connect timeout and deadline of each request in milliseconds
+     * @param maxUrls the number of distinct URLs after which a response is abandoned
+     */
+    public ItunesSource(int timeout, int maxUrls) {
+        this(DEFAULT_ENDPOINT, timeout, maxUrls);
+    } // ItunesSource
+
+    /**
+     * Constructs an {@code ItunesSource} whose requests use the given timeout.
+     * A response is only read until {@code maxUrls} distinct artwork URLs
+     * have been found.
+     *
+     * @param endpoint the URL of the search endpoint
+     * @param timeout the connect timeout and deadline of each request in milliseconds
+     * @param maxUrls the number of distinct URLs after which a response is abandoned
+     */
+    public ItunesSource(String endpoint, int timeout, int maxUrls) {
+        this(endpoint, new HttpTransport(timeout), maxUrls);
+    } // ItunesSource
+
+    /**
+     * Constructs an {@code ItunesSource} that sends its requests through the
+     * given transport.
+     *
+     * @param endpoint the URL of the search endpoint
+     * @param http sends the searches and artwork requests
+     * @param maxUrls the number of distinct URLs after which a response is abandoned
+     */
+    public ItunesSource(String endpoint, HttpTransport http, int maxUrls) {
+        this.endpoint = endpoint;
+        this.http = http;
+        this.maxUrls = maxUrls;
+    } // ItunesSource
+
+    /**
+     * Searches the iTunes Search API. If validators from an earlier response
+     * are given, they are sent along and the result may be "not modified".
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public SearchResult search(String term, String media, int limit, int offset, String etag,
+        String lastModified) throws IOException {
+        String url = buildUrl(endpoint, term, media, limit, offset);
+        List<String> headers = new ArrayList<>(4);
+        if (etag != null) {
+            headers.add("If-None-Match");
+            headers.add(etag);
+        } // if
+        if (lastModified != null) {
+            headers.add("If-Modified-Since");
+            headers.add(lastModified);
+        } // if
+
+        GalleryMetrics metrics = GalleryMetrics.global();
+        long started = metrics.start();
+        // a search is urgent unless it runs in the background
+        RequestScheduler.Priority priority =
+            RequestScheduler.current(RequestScheduler.Priority.SEARCH);
+        try (HttpTransport.Response response = http.get(url, priority,
+            headers.toArray(new String[0]))) {
+            // the request is timed until its headers arrive, the body separately
+            metrics.stop(GalleryMetrics.Phase.SEARCH, started);
+            int status = response.status;
+            String newEtag = response.header("ETag");
+            String newLastModified = response.header("Last-Modified");
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return new SearchResult(Collections.emptyList(), 0,
+                    newEtag != null ? newEtag : etag,
+                    newLastModified != null ? newLastModified : lastModified, true);
+            } // if
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("search failed with HTTP " + status + ": " + url);
+            } // if
+            // the API answers in UTF-8 regardless of the platform charset
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(response.body, StandardCharsets.UTF_8), BUFFER_SIZE);
+            long parsing = metrics.start();
+            ArtworkUrlExtractor.Page page = ArtworkUrlExtractor.extractPage(reader, maxUrls);
+            metrics.stop(GalleryMetrics.Phase.PARSE, parsing);
+            return new SearchResult(page.urls, page.results, newEtag, newLastModified, false);
+        } // try
+    } // search
+
+    /**
+     * Reads the raw bytes behind an artwork URL through this source's transport.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] fetch(String url) throws IOException {
+        try (HttpTransport.Response response = http.get(url)) {
+            if (response.status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("artwork failed with HTTP " + response.status + ": " + url);
+            } // if
+            return response.body.readAllBytes();
+        } // try
+    } // fetch
+
+    /**
+     * Builds the URL of a search request to the iTunes Search API.
+     *
+     * @param term the search term
+     * @param media the media type
+     * @param limit the maximum number of results
+     * @param offset the number of results to skip
+     * @return the request URL
+     */
+    static String buildUrl(String term, String media, int limit, int offset) {
+        return buildUrl(ENDPOINT, term, media, limit, offset);
+    } // buildUrl
+
+    /**
+     * Builds the URL of a search request.
+     *
+     * @param endpoint the URL of the search endpoint
+     * @param term the search term
+     * @param media the media type
+     * @param limit the maximum number of results
+     * @param offset the number of results to skip
+     * @return the request URL
+     */
+    static String buildUrl(String endpoint, String term, String media, int limit, int offset) {
+        String url = endpoint + "?term=" + URLEncoder.encode(term, StandardCharsets.UTF_8)
+            + "&limit=" + limit + "&media=" + URLEncoder.encode(media, StandardCharsets.UTF_8);
+        // leaves the first page's URL as it always was
+        return offset > 0 ? url + "&offset=" + offset : url;
+    } // buildUrl
+
+} // ItunesSource
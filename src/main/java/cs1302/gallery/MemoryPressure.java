@@ -0,0 +1,119 @@
+package cs1302.gallery;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.management.NotificationEmitter;
+
+/**
+ * {@code MemoryPressure} tells the gallery when the heap is running out, so
+ * that memory held only to save work, such as decoded images that are not on
+ * screen, can be given back before the application fails. It asks the
+ * garbage collector to report when a heap pool is still nearly full right
+ * after a collection, which means the memory is really in use rather than
+ * waiting to be collected. Listeners are run on the thread that delivers the
+ * notification, so they must be safe to call from any thread. The same
+ * measure can also be asked for at any time with {@link #underPressure}.
+ */
+public class MemoryPressure {
+
+    /** Fraction of a heap pool in use after a collection that counts as pressure. */
+    static final double THRESHOLD = ArtworkResolution.PRESSURE;
+
+    /** The heap pools whose usage after a collection is watched. */
+    private static final List<MemoryPoolMXBean> HEAP_POOLS = heapPools();
+
+    private static final List<Runnable> LISTENERS = new CopyOnWriteArrayList<>();
+    private static boolean installed;
+
+    /**
+     * Not meant to be constructed; all methods are static.
+     */
+    private MemoryPressure() {
+    } // MemoryPressure
+
+    /**
+     * Adds a listener that is run each time the heap is found to be nearly
+     * full after a collection. The thresholds are set the first time a
+     * listener is added.
+     *
+     * @param listener gives back memory; must be safe to call from any thread
+     */
+    public static synchronized void onPressure(Runnable listener) {
+        LISTENERS.add(listener);
+        if (!installed) {
+            install();
+            installed = true;
+        } // if
+    } // onPressure
+
+    /**
+     * Checks whether a heap pool was nearly full right after its last
+     * collection. Garbage not yet collected does not count, so the answer
+     * does not flip with each young collection.
+     *
+     * @return whether a heap pool is above the threshold after a collection
+     */
+    public static boolean underPressure() {
+        for (MemoryPoolMXBean pool : HEAP_POOLS) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null && usage.getMax() > 0
+                && usage.getUsed() > usage.getMax() * THRESHOLD) {
+                return true;
+            } // if
+        } // for
+        return false;
+    } // underPressure
+
+    /**
+     * Runs every listener, as if the heap had been found nearly full.
+     */
+    static void release() {
+        GalleryMetrics.global().increment(GalleryMetrics.Counter.PRESSURE_RELEASES);
+        for (Runnable listener : LISTENERS) {
+            listener.run();
+        } // for
+    } // release
+
+    /**
+     * Sets a collection usage threshold on every heap pool that supports one
+     * and listens for the notifications sent when a threshold is crossed.
+     */
+    private static void install() {
+        for (MemoryPoolMXBean pool : HEAP_POOLS) {
+            // pools without a maximum cannot be nearly full
+            long max = pool.getUsage().getMax();
+            if (max > 0) {
+                pool.setCollectionUsageThreshold((long) (max * THRESHOLD));
+            } // if
+        } // for
+        NotificationEmitter emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        emitter.addNotificationListener((notification, handback) -> {
+            String type = notification.getType();
+            if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)) {
+                release();
+            } // if
+        }, null, null);
+    } // install
+
+    /**
+     * Finds the heap pools that report their usage after a collection.
+     *
+     * @return the heap pools with a collection usage threshold
+     */
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()) {
+                pools.add(pool);
+            } // if
+        } // for
+        return pools;
+    } // heapPools
+
+} // MemoryPressure
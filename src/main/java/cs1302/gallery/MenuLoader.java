@@ -3,6 +3,8 @@ package cs1302.gallery;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.MenuBar;
+import javafx.scene.control.RadioMenuItem;
+import javafx.scene.control.ToggleGroup;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.application.Platform;
@@ -18,7 +20,8 @@ import javafx.stage.Modality;
 /**
  * A MenuLoader is a custom component that represents a {@code MenuBar}. It
  * contains a File menu and an Help menu. The File menu contains an Exit menu
- * item that exits the app gracefully when clicked. The Help menu contains
+ * item that exits the app gracefully when clicked. The View menu switches
+ * between the wall of 20 images and a grid of every result. The Help menu contains
  * an About menu item that displays the image, name, and email of the auothor
  * of this program and the version number of the app.
  */
@@ -27,8 +30,13 @@ public class MenuLoader extends MenuBar {
     Menu fileMenu;
     MenuItem exit;
 
+    Menu viewMenu;
+    RadioMenuItem wall;
+    RadioMenuItem browse;
+
     Menu helpMenu;
     MenuItem about;
+    Image aboutImage;
 
     private GalleryApp app;
 
@@ -36,6 +44,8 @@ public class MenuLoader extends MenuBar {
      * Constructs a MenuLoader that represents a {@code MenuBar}. It contains
      * a {@code Menu} which is labeled File. File contains a {@code MenuItem}
      * which is labeled Exit and exits the program gracefully if clicked.
+     * A {@code Menu} labeled View switches between the wall of images and
+     * a grid for browsing every result.
      * Additionally, it contains a {@code Menu} which is labeled Help. Help
      * contains a {@code MenuItem} which is labeled About which provides info on
      * the author of the program and the version number when clicked.
@@ -55,20 +65,38 @@ public class MenuLoader extends MenuBar {
         // adds exit to the file menu
         fileMenu.getItems().add(exit);
 
+        viewMenu = new Menu("View");
+        ToggleGroup views = new ToggleGroup();
+        wall = new RadioMenuItem("Wall");
+        wall.setToggleGroup(views);
+        wall.setSelected(true);
+        // shows the 20 artwork images
+        wall.setOnAction(event -> app.contentLoader.showWall());
+        browse = new RadioMenuItem("Browse All");
+        browse.setToggleGroup(views);
+        // shows every artwork image in a scrollable grid
+        browse.setOnAction(event -> app.contentLoader.showGrid());
+        viewMenu.getItems().addAll(wall, browse);
+
         helpMenu = new Menu("Help");
         about = new MenuItem("About");
+        // loads the author's image once, in the background, instead of on every click
+        aboutImage = new Image("file:resources/img.png", 250, 250, true, false, true);
 
         EventHandler<ActionEvent> aboutHandler = event -> {
             // sets up the root of the scene
             VBox aboutRoot = new VBox();
 
             // initializes the components for the scene
-            Image aboutImage = new Image("file:resources/img.png", 250, 250, true, false);
             ImageView aboutView = new ImageView();
+            // shows the image when it is done loading, if it is not already
             aboutView.setImage(aboutImage);
             Text aboutText = new Text();
             aboutText.setFont(new Font(20));
             aboutText.setText("Name: James Yu\nEmail: jy67291@uga.edu\nVersion 1.0");
+            if (aboutImage.isError()) {
+                aboutText.setText(aboutText.getText() + "\n(image unavailable)");
+            } // if
 
             // adds the components to the root of the scene
             aboutRoot.getChildren().addAll(aboutView, aboutText);
@@ -91,7 +119,7 @@ public class MenuLoader extends MenuBar {
         helpMenu.getItems().add(about);
 
         // adds menus to the menu loader
-        this.getMenus().addAll(fileMenu, helpMenu);
+        this.getMenus().addAll(fileMenu, viewMenu, helpMenu);
     } // MenuLoader
 
 } // MenuLoader
@@ -0,0 +1,180 @@
+package cs1302.gallery;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * A {@code MetricsExporter} writes a snapshot of the {@link GalleryMetrics}
+ * at a fixed interval, either as a row appended to a CSV file or as a log
+ * line. Values are cumulative since start or since the last reset over JMX,
+ * so rates are found by comparing rows.
+ */
+public class MetricsExporter {
+
+    /** Default seconds between exports, 0 for none; set with {@code -Dgallery.metrics.interval}. */
+    static final int DEFAULT_INTERVAL = Integer.getInteger("gallery.metrics.interval", 0);
+
+    /** CSV file to export to, or none to log; set with {@code -Dgallery.metrics.csv}. */
+    static final String DEFAULT_CSV = System.getProperty("gallery.metrics.csv");
+
+    private static final Logger LOG = Logger.getLogger(MetricsExporter.class.getName());
+
+    private final GalleryMetrics metrics;
+    private final Path csv;
+    private final int interval;
+    private ScheduledExecutorService timer;
+
+    /**
+     * Constructs a {@code MetricsExporter} with the default interval and output.
+     *
+     * @param metrics the metrics to export
+     */
+    public MetricsExporter(GalleryMetrics metrics) {
+        this(metrics, DEFAULT_CSV != null ? Paths.get(DEFAULT_CSV) : null, DEFAULT_INTERVAL);
+    } // MetricsExporter
+
+    /**
+     * Constructs a {@code MetricsExporter}.
+     *
+     * @param metrics the metrics to export
+     * @param csv the CSV file to append to, or {@code null} to log instead
+     * @param interval seconds between exports, or 0 to never export
+     */
+    public MetricsExporter(GalleryMetrics metrics, Path csv, int interval) {
+        this.metrics = metrics;
+        this.csv = csv;
+        this.interval = interval;
+    } // MetricsExporter
+
+    /**
+     * Starts exporting on a daemon thread, unless the interval is 0.
+     */
+    public synchronized void start() {
+        if (interval <= 0 || timer != null) {
+            return;
+        } // if
+        timer = Executors.newSingleThreadScheduledExecutor(target -> {
+            Thread t = new Thread(target, "metrics-export");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(this::export, interval, interval, TimeUnit.SECONDS);
+    } // start
+
+    /**
+     * Stops exporting, after writing one last snapshot.
+     */
+    public synchronized void stop() {
+        if (timer == null) {
+            return;
+        } // if
+        timer.shutdownNow();
+        timer = null;
+        export();
+    } // stop
+
+    /**
+     * Writes one snapshot. A failure to write is logged and the next
+     * snapshot tries again.
+     */
+    void export() {
+        if (csv == null) {
+            LOG.info(describe());
+            return;
+        } // if
+        try {
+            boolean fresh = !Files.exists(csv) || Files.size(csv) == 0;
+            try (Writer out = Files.newBufferedWriter(csv, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                if (fresh) {
+                    out.write(header());
+                    out.write('\n');
+                } // if
+                out.write(row(System.currentTimeMillis()));
+                out.write('\n');
+            } // try
+        } catch (IOException e) {
+            LOG.warning("cannot write metrics to " + csv + ": " + e);
+        } // try
+    } // export
+
+    /**
+     * Returns the CSV header: a timestamp, then the count, mean and maximum
+     * of every phase, then every counter.
+     *
+     * @return the header line
+     */
+    String header() {
+        StringBuilder line = new StringBuilder("timestamp");
+        for (GalleryMetrics.Phase phase : GalleryMetrics.Phase.values()) {
+            String name = GalleryMetrics.name(phase);
+            line.append(',').append(name).append("_count")
+                .append(',').append(name).append("_mean_ms")
+                .append(',').append(name).append("_max_ms");
+        } // for
+        for (GalleryMetrics.Counter counter : GalleryMetrics.Counter.values()) {
+            line.append(',').append(GalleryMetrics.name(counter));
+        } // for
+        return line.toString();
+    } // header
+
+    /**
+     * Returns a CSV row with the current values, in the order of the header.
+     *
+     * @param timestamp the time of the snapshot in milliseconds since the epoch
+     * @return the row
+     */
+    String row(long timestamp) {
+        StringBuilder line = new StringBuilder().append(timestamp);
+        for (GalleryMetrics.Phase phase : GalleryMetrics.Phase.values()) {
+            line.append(',').append(metrics.getCount(phase))
+                .append(',').append(format(metrics.getMeanMillis(phase)))
+                .append(',').append(format(metrics.getMaxNanos(phase) / 1e6));
+        } // for
+        for (GalleryMetrics.Counter counter : GalleryMetrics.Counter.values()) {
+            line.append(',').append(metrics.get(counter));
+        } // for
+        return line.toString();
+    } // row
+
+    /**
+     * Returns a one-line summary of the current values for the log.
+     *
+     * @return the summary
+     */
+    String describe() {
+        StringBuilder line = new StringBuilder("gallery metrics:");
+        for (GalleryMetrics.Phase phase : GalleryMetrics.Phase.values()) {
+            line.append(' ').append(GalleryMetrics.name(phase)).append('=')
+                .append(metrics.getCount(phase)).append('/')
+                .append(format(metrics.getMeanMillis(phase))).append("ms/")
+                .append(format(metrics.getMaxNanos(phase) / 1e6)).append("ms");
+        } // for
+        for (GalleryMetrics.Counter counter : GalleryMetrics.Counter.values()) {
+            line.append(' ').append(GalleryMetrics.name(counter)).append('=')
+                .append(metrics.get(counter));
+        } // for
+        return line.toString();
+    } // describe
+
+    /**
+     * Formats milliseconds with three decimals, independent of the locale.
+     *
+     * @param millis the milliseconds
+     * @return the formatted value
+     */
+    private static String format(double millis) {
+        return String.format(Locale.ROOT, "%.3f", millis);
+    } // format
+
+} // MetricsExporter
@@ -0,0 +1,170 @@
+package cs1302.gallery;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@code PagedSearch} gathers artwork URLs for a query one page of results
+ * at a time until it has found a target number of distinct URLs or the query
+ * runs out of results. The first page is fetched alone on the calling thread,
+ * since most queries fit in it, so searches for several queries at once do
+ * not wait for each other's first pages. Later pages are fetched a few at a
+ * time in parallel. Pages are handed to a listener in order, as soon as each
+ * one and those before it have landed.
+ */
+public class PagedSearch {
+
+    /** Number of results per page; the most the iTunes Search API returns at once. */
+    static final int PAGE_SIZE = 200;
+
+    /** Number of pages fetched in parallel; set with {@code -Dgallery.pages}. */
+    static final int CONCURRENCY = Integer.getInteger("gallery.pages", 3);
+
+    /** Highest offset ever requested, so a misbehaving server cannot page forever. */
+    static final int MAX_OFFSET = 20000;
+
+    private final SearchCache searches;
+    private final ExecutorService pool;
+
+    /**
+     * Receives the new distinct URLs of each page.
+     */
+    @FunctionalInterface
+    public interface PageListener {
+
+        /**
+         * Called on the searching thread with the URLs of a page that were not
+         * on any earlier page.
+         *
+         * @param urls the new distinct URLs, in order
+         * @throws InterruptedException to stop the search
+         */
+        void onPage(List<String> urls) throws InterruptedException;
+    } // PageListener
+
+    /**
+     * Constructs a {@code PagedSearch} that fetches pages through a search cache.
+     *
+     * @param searches the cache used to fetch each page
+     */
+    public PagedSearch(SearchCache searches) {
+        this.searches = searches;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(CONCURRENCY, target -> {
+            Thread t = new Thread(target, "search-page-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    } // PagedSearch
+
+    /**
+     * Fetches pages of a query until {@code target} distinct URLs are found,
+     * a page comes back short, or a whole round of pages adds nothing new.
+     * URLs are de-duplicated across pages by their normalized form.
+     *
+     * @param term the search term
+     * @param media the media type
+     * @param target the number of distinct URLs wanted
+     * @param listener receives the new URLs of each page
+     * @return the number of distinct URLs found
+     * @throws IOException if the first page cannot be fetched
+     * @throws InterruptedException if the search is interrupted or the listener stops it
+     */
+    public int fetch(String term, String media, int target, PageListener listener)
+        throws IOException, InterruptedException {
+        UrlDeduplicator dedup = new UrlDeduplicator(true, target);
+        GalleryMetrics metrics = GalleryMetrics.global();
+        int offset = 0;
+        boolean more = true;
+        while (more && dedup.size() < target && offset <= MAX_OFFSET) {
+            // the first page is fetched alone; later pages a round at a time, no more than needed
+            int needed = (target - dedup.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+            int pages = offset == 0 ? 1 : Math.min(CONCURRENCY, needed);
+            List<Future<SearchResult>> round = new ArrayList<>(pages);
+            if (offset == 0) {
+                FutureTask<SearchResult> first = new FutureTask<>(() ->
+                    searches.getPage(term, media, PAGE_SIZE, 0));
+                first.run();
+                round.add(first);
+            } else {
+                for (int i = 0; i < pages; i++) {
+                    final int pageOffset = offset + i * PAGE_SIZE;
+                    round.add(pool.submit(() ->
+                        searches.getPage(term, media, PAGE_SIZE, pageOffset)));
+                } // for
+            } // if
+            int before = dedup.size();
+            try {
+                for (Future<SearchResult> page : round) {
+                    SearchResult result = get(page, offset == 0);
+                    if (result == null) {
+                        // a later page failed; keeps what was found so far
+                        more = false;
+                        break;
+                    } // if
+                    long deduping = metrics.start();
+                    List<String> fresh = new ArrayList<>();
+                    for (String url : result.urls) {
+                        if (dedup.add(url)) {
+                            fresh.add(url);
+                        } // if
+                    } // for
+                    metrics.stop(GalleryMetrics.Phase.DEDUP, deduping);
+                    if (!fresh.isEmpty()) {
+                        listener.onPage(fresh);
+                    } // if
+                    if (result.resultCount < PAGE_SIZE || dedup.size() >= target) {
+                        more = false;
+                        break;
+                    } // if
+                } // for
+            } finally {
+                for (Future<SearchResult> page : round) {
+                    page.cancel(true);
+                } // for
+            } // try
+            // stops if the server keeps answering with the same results
+            if (dedup.size() == before) {
+                more = false;
+            } // if
+            offset += pages * PAGE_SIZE;
+        } // while
+        return dedup.size();
+    } // fetch
+
+    /**
+     * Waits for a page. A failure of the first page is thrown, while a failure
+     * of a later page only ends the search.
+     *
+     * @param page the pending page
+     * @param first whether this is the first page
+     * @return the page, or {@code null} if a later page failed
+     * @throws IOException if the first page failed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static SearchResult get(Future<SearchResult> page, boolean first)
+        throws IOException, InterruptedException {
+        try {
+            return page.get();
+        } catch (ExecutionException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                // the first page failed because the search was stopped
+                throw new InterruptedException("search interrupted");
+            } else if (!first) {
+                return null;
+            } else if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else {
+                throw new IOException(e.getCause());
+            } // if
+        } // try
+    } // get
+
+} // PagedSearch
@@ -0,0 +1,167 @@
+package cs1302.gallery;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A {@code PngStreamWriter} writes an RGB PNG image a few rows at a time, so
+ * an image of any height can be written while only its current rows are in
+ * memory. The size of the image is fixed up front. Rows are compressed as
+ * they arrive and written out in {@code IDAT} chunks whenever the compressed
+ * buffer fills up; {@link #close()} finishes the image. Rows are not filtered,
+ * which costs some compression but keeps the writer simple and fast.
+ */
+public class PngStreamWriter implements AutoCloseable {
+
+    /** The eight bytes every PNG file starts with. */
+    private static final byte[] SIGNATURE = {
+        (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'
+    };
+
+    /** Size of the compressed buffer, and so of every {@code IDAT} chunk but the last. */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    private final Deflater deflater;
+    private final byte[] row;
+    private final byte[] compressed;
+    private int written;
+
+    /**
+     * Constructs a {@code PngStreamWriter} and writes the header of the image.
+     *
+     * @param out where the image is written; closed along with this writer
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @throws IOException if the header cannot be written
+     */
+    public PngStreamWriter(OutputStream out, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("empty image: " + width + "x" + height);
+        } // if
+        this.out = new DataOutputStream(new BufferedOutputStream(out, CHUNK_SIZE + 12));
+        this.width = width;
+        this.height = height;
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        // each row starts with its filter type, 0 for none
+        this.row = new byte[1 + width * 3];
+        this.compressed = new byte[CHUNK_SIZE];
+
+        this.out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;  // bits per sample
+        header[9] = 2;  // color type: RGB
+        header[10] = 0; // deflate compression
+        header[11] = 0; // adaptive filtering
+        header[12] = 0; // no interlace
+        writeChunk("IHDR", header, header.length);
+    } // PngStreamWriter
+
+    /**
+     * Writes the next rows of the image.
+     *
+     * @param argb the pixels of the rows in ARGB form, row after row; alpha is ignored
+     * @param rows the number of rows given
+     * @throws IOException if the rows cannot be written
+     * @throws IllegalStateException if more rows are given than the image has
+     */
+    public void writeRows(int[] argb, int rows) throws IOException {
+        if (written + rows > height) {
+            throw new IllegalStateException("image only has " + height + " rows");
+        } // if
+        for (int y = 0; y < rows; y++) {
+            int offset = y * width;
+            for (int x = 0, i = 1; x < width; x++) {
+                int pixel = argb[offset + x];
+                row[i++] = (byte) (pixel >> 16);
+                row[i++] = (byte) (pixel >> 8);
+                row[i++] = (byte) pixel;
+            } // for
+            deflater.setInput(row);
+            while (!deflater.needsInput()) {
+                drain();
+            } // while
+        } // for
+        written += rows;
+    } // writeRows
+
+    /**
+     * Finishes the image and closes the underlying stream.
+     *
+     * @throws IOException if the image cannot be finished
+     * @throws IllegalStateException if fewer rows were written than the image has
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (written < height) {
+                throw new IllegalStateException("only " + written + " of " + height
+                    + " rows written");
+            } // if
+            deflater.finish();
+            while (!deflater.finished()) {
+                drain();
+            } // while
+            writeChunk("IEND", new byte[0], 0);
+        } finally {
+            deflater.end();
+            out.close();
+        } // try
+    } // close
+
+    /**
+     * Moves compressed data to the output, one {@code IDAT} chunk per full
+     * buffer.
+     *
+     * @throws IOException if a chunk cannot be written
+     */
+    private void drain() throws IOException {
+        int length = deflater.deflate(compressed);
+        if (length > 0) {
+            writeChunk("IDAT", compressed, length);
+        } // if
+    } // drain
+
+    /**
+     * Writes one chunk: its length, type, data and checksum.
+     *
+     * @param type the four-letter chunk type
+     * @param data the chunk data
+     * @param length the number of bytes of data
+     * @throws IOException if the chunk cannot be written
+     */
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(name);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    } // writeChunk
+
+    /**
+     * Stores a big-endian integer in a byte array.
+     *
+     * @param bytes the array
+     * @param at the index of the first byte
+     * @param value the integer
+     */
+    private static void putInt(byte[] bytes, int at, int value) {
+        bytes[at] = (byte) (value >>> 24);
+        bytes[at + 1] = (byte) (value >>> 16);
+        bytes[at + 2] = (byte) (value >>> 8);
+        bytes[at + 3] = (byte) value;
+    } // putInt
+
+} // PngStreamWriter
@@ -1,26 +1,41 @@
 package cs1302.gallery;
 
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
 import javafx.scene.layout.HBox;
 import javafx.scene.control.ProgressBar;
 import javafx.scene.control.Label;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * {@code ProgressArea} represents an {@code HBox}. It contains
  * a progress bar to show the progress of downloading images.
  * It also contains a label to show the source of the images.
+ * Download workers report finished images and downloaded bytes through
+ * atomic counters from any thread. While a load is running, the counters
+ * are published to the progress bar and a rate label at most once per frame.
  */
 public class ProgressArea extends HBox {
 
     ProgressBar progressBar;
+    Label rate;
     Label courtesy;
-    double progressCount;
     private GalleryApp app;
 
+    private final AtomicInteger completed;
+    private final AtomicLong bytes;
+    private volatile int total;
+    private volatile long startNanos;
+    private volatile boolean loading;
+    private int published;
+    private AnimationTimer publisher;
+
     /**
      * Constructs a new {@code ProgressArea} that is an {@code HBox}.
      * It sets the spacing to 5. It creates a new progress bar that
-     * is 0% complete and a new label which tells the user that
-     * the images are provided from iTunes.
+     * is 0% complete, a label for the download rate, and a new label
+     * which tells the user that the images are provided from iTunes.
      *
      * @param app the current application object
      */
@@ -31,13 +46,112 @@ public class ProgressArea extends HBox {
         // creates new progress bar with 0 progress
         progressBar = new ProgressBar(0);
 
-        // tracks progress of downloading images; used in ContentLoader
-        progressCount = 0;
+        // tracks progress of downloading images; updated by download workers
+        completed = new AtomicInteger();
+        bytes = new AtomicLong();
+
+        // publishes the counters once per frame while loading
+        publisher = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                publish();
+            } // handle
+        };
 
-        // creates the courtesy statement
+        // creates the download rate and courtesy statements
+        rate = new Label();
         courtesy = new Label("Images provided courtesy of iTunes");
 
-        // adds progress bar and courtesy label to the progress area
-        this.getChildren().addAll(progressBar, courtesy);
+        // adds progress bar and labels to the progress area
+        this.getChildren().addAll(progressBar, rate, courtesy);
     } // ProgressArea
+
+    /**
+     * Starts tracking a new load. May be called from any thread.
+     *
+     * @param images the number of images the load will download, or 0 if not known yet
+     */
+    public void start(int images) {
+        completed.set(0);
+        bytes.set(0);
+        total = images;
+        startNanos = System.nanoTime();
+        loading = true;
+        runOnFx(() -> {
+            published = -1;
+            publisher.start();
+        });
+    } // start
+
+    /**
+     * Sets the number of images the current load will download, once known.
+     * May be called from any thread.
+     *
+     * @param images the number of images
+     */
+    public void setTotal(int images) {
+        total = images;
+    } // setTotal
+
+    /**
+     * Records one finished image. May be called from any number of
+     * download workers at once.
+     */
+    public void imageDone() {
+        completed.incrementAndGet();
+    } // imageDone
+
+    /**
+     * Records bytes received from the network. May be called from any
+     * number of download workers at once.
+     *
+     * @param count the number of bytes
+     */
+    public void bytesReceived(long count) {
+        bytes.addAndGet(count);
+    } // bytesReceived
+
+    /**
+     * Ends the current load, filling the progress bar. May be called from any thread.
+     */
+    public void finish() {
+        loading = false;
+        runOnFx(() -> {
+            publisher.stop();
+            publish();
+            progressBar.setProgress(1);
+        });
+    } // finish
+
+    /**
+     * Copies the counters to the progress bar and rate label. Skips the update
+     * when nothing changed since the last frame.
+     */
+    private void publish() {
+        int done = completed.get();
+        if (done == published && loading) {
+            return;
+        } // if
+        published = done;
+        int images = total;
+        progressBar.setProgress(images == 0 ? 0 : Math.min(1.0, (double) done / images));
+
+        // shows images and kilobytes per second since the load started
+        double seconds = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+        rate.setText(String.format("%.1f img/s  %.0f KB/s", done / seconds,
+            bytes.get() / 1024.0 / seconds));
+    } // publish
+
+    /**
+     * Runs an action on the JavaFX Application Thread, directly if already on it.
+     *
+     * @param action the action to run
+     */
+    private static void runOnFx(Runnable action) {
+        if (Platform.isFxApplicationThread()) {
+            action.run();
+        } else {
+            Platform.runLater(action);
+        } // if
+    } // runOnFx
 } // ProgressArea
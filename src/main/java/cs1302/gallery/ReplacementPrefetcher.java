@@ -0,0 +1,248 @@
+package cs1302.gallery;
+
+import javafx.scene.image.Image;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+/**
+ * A {@code ReplacementPrefetcher} keeps a small, rolling buffer of artwork
+ * ready for random replacement. Instead of downloading every replacement up
+ * front, it fetches a few images ahead of the replacement timeline and
+ * starts one more download each time an image is taken. Taken images are
+ * not kept, so memory and bandwidth stay flat however long replacement runs.
+ * It cycles through every URL of the query and starts over at the end,
+ * skipping artwork that is on screen. Images that look the same as one on
+ * screen or one already buffered are dropped as they arrive, so every
+ * buffered image shows something new. Must only be used on the JavaFX
+ * Application Thread.
+ */
+public class ReplacementPrefetcher {
+
+    /** Default number of images kept ready; set with {@code -Dgallery.prefetch}. */
+    static final int DEFAULT_BUFFER = Integer.getInteger("gallery.prefetch", 8);
+
+    private final ArtworkDownloader downloader;
+    private final ArtworkFingerprints fingerprints;
+    private final FxUpdateQueue updates;
+    private final int buffer;
+    private final ArrayDeque<Entry> ready;
+    private final Map<String, Future<?>> inFlight;
+    private final Set<String> rejected;
+    private List<String> urls;
+    private int cursor;
+    private int pixels;
+    private int generation;
+    private Predicate<String> shown;
+    private Predicate<Image> lookalike;
+
+    /**
+     * An image ready to be shown, along with the URL it was found under.
+     */
+    public static class Entry {
+        final String url;
+        final Image image;
+
+        /**
+         * Constructs an {@code Entry}.
+         *
+         * @param url the artwork URL as found by the search
+         * @param image the downloaded image
+         */
+        Entry(String url, Image image) {
+            this.url = url;
+            this.image = image;
+        } // Entry
+    } // Entry
+
+    /**
+     * Constructs an empty {@code ReplacementPrefetcher} with the default buffer size.
+     *
+     * @param downloader downloads the buffered images
+     * @param updates hands downloaded images back to the JavaFX Application Thread
+     */
+    public ReplacementPrefetcher(ArtworkDownloader downloader, FxUpdateQueue updates) {
+        this(downloader, updates, DEFAULT_BUFFER);
+    } // ReplacementPrefetcher
+
+    /**
+     * Constructs an empty {@code ReplacementPrefetcher}.
+     *
+     * @param downloader downloads the buffered images
+     * @param updates hands downloaded images back to the JavaFX Application Thread
+     * @param buffer the number of images kept ready or downloading
+     */
+    public ReplacementPrefetcher(ArtworkDownloader downloader, FxUpdateQueue updates,
+        int buffer) {
+        this.downloader = downloader;
+        this.fingerprints = downloader.getFingerprints();
+        this.updates = updates;
+        this.buffer = Math.max(1, buffer);
+        this.ready = new ArrayDeque<>();
+        this.inFlight = new LinkedHashMap<>();
+        this.rejected = new HashSet<>();
+        this.urls = Collections.emptyList();
+        this.shown = url -> false;
+        this.lookalike = image -> false;
+    } // ReplacementPrefetcher
+
+    /**
+     * Starts over with the URLs of a new query, dropping the buffered images
+     * and cancelling the downloads of the previous one. Prefetching starts
+     * after the first {@code skip} URLs, which are already on screen.
+     *
+     * @param all the URLs of the query, in order
+     * @param skip the number of URLs to start after
+     * @param size the width and height of the artwork to fetch
+     * @param onScreen tells whether a URL is currently shown
+     * @param looksShown tells whether an image looks the same as one currently shown
+     */
+    public void reset(List<String> all, int skip, int size, Predicate<String> onScreen,
+        Predicate<Image> looksShown) {
+        clear();
+        urls = new ArrayList<>(all);
+        cursor = urls.isEmpty() ? 0 : skip % urls.size();
+        pixels = size;
+        shown = onScreen;
+        lookalike = looksShown;
+        fill();
+    } // reset
+
+    /**
+     * Adds URLs found by a later page of the query.
+     *
+     * @param more the new URLs
+     */
+    public void addUrls(List<String> more) {
+        urls.addAll(more);
+        fill();
+    } // addUrls
+
+    /**
+     * Takes the next buffered image that is not on screen, and starts
+     * fetching another one.
+     *
+     * @return the image and its URL, or {@code null} if none is ready yet
+     */
+    public Entry poll() {
+        Entry next = ready.poll();
+        // the same artwork may have been put on screen since it was fetched
+        while (next != null && (shown.test(next.url) || lookalike.test(next.image))) {
+            next = ready.poll();
+        } // while
+        fill();
+        return next;
+    } // poll
+
+    /**
+     * Returns the number of images ready to be taken.
+     *
+     * @return the number of buffered images
+     */
+    public int size() {
+        return ready.size();
+    } // size
+
+    /**
+     * Drops every buffered image and cancels the downloads in flight.
+     */
+    public void clear() {
+        generation++;
+        ready.clear();
+        ArtworkDownloader.cancel(new ArrayList<>(inFlight.values()));
+        inFlight.clear();
+        rejected.clear();
+        urls = Collections.emptyList();
+        cursor = 0;
+    } // clear
+
+    /**
+     * Starts downloads until the buffer is full, taking URLs in order and
+     * wrapping around at the end. URLs on screen, buffered, in flight or
+     * rejected as look-alikes are skipped, and every URL is looked at most
+     * once per call.
+     */
+    private void fill() {
+        int looked = 0;
+        while (ready.size() + inFlight.size() < buffer && looked < urls.size()) {
+            String url = urls.get(cursor);
+            cursor = (cursor + 1) % urls.size();
+            looked++;
+            if (shown.test(url) || inFlight.containsKey(url) || isReady(url)
+                || rejected.contains(url)) {
+                continue;
+            } // if
+            final int current = generation;
+            // gives way to the tiles on screen, which are still loading at first
+            inFlight.put(url, downloader.downloadOne(ArtworkResolution.resize(url, pixels),
+                pixels, RequestScheduler.Priority.PREFETCH,
+                artImage -> updates.post(() -> arrived(current, url, artImage))));
+        } // while
+    } // fill
+
+    /**
+     * Called on the JavaFX Application Thread when a prefetch has finished.
+     * A failed download is not retried until the next image is taken, so an
+     * unreachable server does not cause a stream of requests. An image that
+     * looks the same as one on screen or buffered is dropped, and its URL is
+     * not fetched again for this query; another download takes its place.
+     *
+     * @param current the generation the download was started in
+     * @param url the artwork URL
+     * @param artImage the image, or {@code null} if the download failed
+     */
+    private void arrived(int current, String url, Image artImage) {
+        if (current != generation) {
+            return;
+        } // if
+        inFlight.remove(url);
+        if (artImage == null) {
+            return;
+        } // if
+        if (lookalike.test(artImage) || looksReady(artImage)) {
+            GalleryMetrics.global().increment(GalleryMetrics.Counter.DUPLICATES_DROPPED);
+            rejected.add(url);
+            fill();
+            return;
+        } // if
+        ready.add(new Entry(url, artImage));
+    } // arrived
+
+    /**
+     * Checks whether an image looks the same as a buffered one.
+     *
+     * @param image the image
+     * @return whether a buffered image looks the same
+     */
+    private boolean looksReady(Image image) {
+        for (Entry entry : ready) {
+            if (fingerprints.similar(entry.image, image)) {
+                return true;
+            } // if
+        } // for
+        return false;
+    } // looksReady
+
+    /**
+     * Checks whether an image for a URL is buffered.
+     *
+     * @param url the artwork URL
+     * @return whether it is buffered
+     */
+    private boolean isReady(String url) {
+        for (Entry entry : ready) {
+            if (entry.url.equals(url)) {
+                return true;
+            } // if
+        } // for
+        return false;
+    } // isReady
+
+} // ReplacementPrefetcher
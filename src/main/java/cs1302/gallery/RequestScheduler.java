@@ -0,0 +1,326 @@
+package cs1302.gallery;
+
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@code RequestScheduler} decides when each HTTP request may be sent, so
+ * the gallery stays within what a server allows and the requests that matter
+ * most go first. Every host has its own budget: a limited number of requests
+ * in flight and a token bucket that allows a burst of requests and then a
+ * steady rate. The iTunes Search API allows only about 20 searches a minute,
+ * so its host gets a budget of its own. When a host answers that it is being
+ * asked too often, with a 429 or 403 status, it gets no requests until its
+ * {@code Retry-After} time has passed, or for a growing pause if it gave none,
+ * and its rate is halved. The rate grows back as requests succeed. Requests
+ * waiting for the same host are let through by {@link Priority}, earliest
+ * first within a priority.
+ *
+ * <p>The priority of a request is that of the thread sending it, set with
+ * {@link #runAs}, so sources need not pass it along through every call.
+ */
+public class RequestScheduler {
+
+    /** Requests per second per host, 0 for no limit; set with {@code -Dgallery.http.rate}. */
+    static final int RATE = Integer.getInteger("gallery.http.rate", 50);
+
+    /** Requests allowed at once after a quiet spell; set with {@code -Dgallery.http.burst}. */
+    static final int BURST = Integer.getInteger("gallery.http.burst", 50);
+
+    /** The host of the iTunes Search API, which throttles far sooner than others. */
+    static final String SEARCH_HOST = "itunes.apple.com";
+
+    /** Searches per minute to the iTunes Search API; set with {@code -Dgallery.http.searchRate}. */
+    static final int SEARCH_RATE = Integer.getInteger("gallery.http.searchRate", 20);
+
+    /** Searches the iTunes Search API gets at once; set with {@code -Dgallery.http.searchBurst}. */
+    static final int SEARCH_BURST = Integer.getInteger("gallery.http.searchBurst", 5);
+
+    /** Pause after a throttled answer with no {@code Retry-After}; doubles if it recurs. */
+    static final long THROTTLE_MILLIS = 1000;
+
+    /** Longest pause of a throttled host, whatever it asks for. */
+    static final long MAX_PAUSE_MILLIS = 60_000;
+
+    /** The priority of the requests sent by each thread. */
+    private static final ThreadLocal<Priority> CURRENT = new ThreadLocal<>();
+
+    private final int perHost;
+    private final int rate;
+    private final int burst;
+    private final Map<String, Host> hosts;
+    private final Map<String, Budget> budgets;
+
+    /**
+     * What a request is for, from most to least urgent.
+     */
+    public enum Priority {
+        /** A search the user is waiting on. */
+        SEARCH,
+        /** Artwork for a tile on screen. */
+        VISIBLE,
+        /** Artwork kept ready to replace a tile. */
+        PREFETCH,
+        /** Work nobody is waiting on, such as refreshing a cached search. */
+        BACKGROUND
+    } // Priority
+
+    /**
+     * The rate and burst a host is allowed instead of the default ones.
+     */
+    private static class Budget {
+        final double perSecond;
+        final int burst;
+
+        /**
+         * Constructs a {@code Budget}.
+         *
+         * @param perSecond the number of requests allowed per second, or 0 for any
+         * @param burst the number of requests that may be sent at once
+         */
+        Budget(double perSecond, int burst) {
+            this.perSecond = perSecond;
+            this.burst = burst;
+        } // Budget
+    } // Budget
+
+    /**
+     * Constructs a {@code RequestScheduler}.
+     *
+     * @param perHost the number of requests allowed in flight per host
+     * @param rate the number of requests allowed per second per host, or 0 for any
+     * @param burst the number of requests that may be sent at once
+     */
+    public RequestScheduler(int perHost, int rate, int burst) {
+        this.perHost = Math.max(1, perHost);
+        this.rate = Math.max(0, rate);
+        this.burst = Math.max(1, burst);
+        this.hosts = new ConcurrentHashMap<>();
+        this.budgets = new ConcurrentHashMap<>();
+        budget(SEARCH_HOST, SEARCH_RATE / 60.0, SEARCH_BURST);
+    } // RequestScheduler
+
+    /**
+     * Gives a host a budget other than the default one. It takes effect the
+     * first time the host is asked for.
+     *
+     * @param authority the host and port of request URLs
+     * @param perSecond the number of requests allowed per second, or 0 for any
+     * @param hostBurst the number of requests that may be sent at once
+     */
+    public void budget(String authority, double perSecond, int hostBurst) {
+        budgets.put(authority, new Budget(Math.max(0, perSecond), Math.max(1, hostBurst)));
+    } // budget
+
+    /**
+     * Returns the budget of a host, creating it the first time.
+     *
+     * @param authority the host and port of the request URL
+     * @return the budget of the host
+     */
+    public Host host(String authority) {
+        return hosts.computeIfAbsent(authority, name -> {
+            Budget own = budgets.get(name);
+            return own != null ? new Host(name, perHost, own.perSecond, own.burst)
+                : new Host(name, perHost, rate, burst);
+        });
+    } // host
+
+    /**
+     * Runs a task whose requests have the given priority.
+     *
+     * @param priority the priority of the task's requests
+     * @param task the task
+     */
+    public static void runAs(Priority priority, Runnable task) {
+        Priority previous = CURRENT.get();
+        CURRENT.set(priority);
+        try {
+            task.run();
+        } finally {
+            CURRENT.set(previous);
+        } // try
+    } // runAs
+
+    /**
+     * Returns the priority of the requests of the calling thread.
+     *
+     * @param otherwise the priority to use if none was set with {@link #runAs}
+     * @return the priority
+     */
+    public static Priority current(Priority otherwise) {
+        Priority priority = CURRENT.get();
+        return priority != null ? priority : otherwise;
+    } // current
+
+    /**
+     * A request waiting for its host, in the order requests are let through.
+     */
+    private static class Waiter implements Comparable<Waiter> {
+        final Priority priority;
+        final long sequence;
+
+        /**
+         * Constructs a {@code Waiter}.
+         *
+         * @param priority the priority of the request
+         * @param sequence the number of requests to the host that came before it
+         */
+        Waiter(Priority priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        } // Waiter
+
+        /**
+         * Orders requests by priority, most urgent first, then by arrival.
+         *
+         * @param other another waiting request
+         * @return a negative number if this request goes first, a positive one if the other does
+         */
+        @Override
+        public int compareTo(Waiter other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        } // compareTo
+    } // Waiter
+
+    /**
+     * The budget of one host. A request takes a slot and a token before it
+     * is sent and gives the slot back when its response is closed.
+     */
+    public static class Host {
+        private final String name;
+        private final int slots;
+        private final double maxRate;
+        private final int burst;
+        private final PriorityQueue<Waiter> waiting;
+        private long sequence;
+        private int inFlight;
+        private double rate;
+        private double tokens;
+        private long refilledAt;
+        private long pausedUntil;
+        private int throttles;
+
+        /**
+         * Constructs a {@code Host} with a full bucket.
+         *
+         * @param name the host and port
+         * @param slots the number of requests allowed in flight
+         * @param rate the number of requests allowed per second, or 0 for any
+         * @param burst the number of tokens the bucket holds
+         */
+        Host(String name, int slots, double rate, int burst) {
+            this.name = name;
+            this.slots = slots;
+            this.maxRate = rate;
+            this.burst = burst;
+            this.waiting = new PriorityQueue<>();
+            this.rate = rate;
+            this.tokens = burst;
+            this.refilledAt = System.nanoTime();
+            this.pausedUntil = refilledAt;
+        } // Host
+
+        /**
+         * Waits until a request of the given priority may be sent: no more
+         * urgent request is waiting, a slot and a token are free, and the
+         * host is not paused.
+         *
+         * @param priority the priority of the request
+         * @throws InterruptedIOException if interrupted while waiting
+         */
+        public synchronized void acquire(Priority priority) throws InterruptedIOException {
+            Waiter waiter = new Waiter(priority, sequence++);
+            waiting.add(waiter);
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    refill(now);
+                    long delay = 0;
+                    if (waiting.peek() == waiter && inFlight < slots) {
+                        if (now - pausedUntil < 0) {
+                            delay = pausedUntil - now;
+                        } else if (maxRate > 0 && tokens < 1) {
+                            delay = (long) Math.ceil((1 - tokens) * 1e9 / rate);
+                        } else {
+                            tokens--;
+                            inFlight++;
+                            return;
+                        } // if
+                    } // if
+                    // only the request at the head of the line waits on the clock
+                    if (delay > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(this, delay);
+                    } else {
+                        wait();
+                    } // if
+                } // while
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted waiting for " + name);
+            } finally {
+                // the next request in line may be able to go
+                waiting.remove(waiter);
+                notifyAll();
+            } // try
+        } // acquire
+
+        /**
+         * Gives back the slot of a request whose response was closed.
+         */
+        public synchronized void release() {
+            inFlight--;
+            notifyAll();
+        } // release
+
+        /**
+         * Records that the host answered a request normally, which lets its
+         * rate grow back after a throttled answer.
+         */
+        public synchronized void succeeded() {
+            throttles = 0;
+            if (rate < maxRate) {
+                rate = Math.min(maxRate, rate + maxRate / burst);
+            } // if
+        } // succeeded
+
+        /**
+         * Records that the host refused a request for being asked too often.
+         * The host is paused for as long as it asked, or for a pause that
+         * doubles with every throttled answer in a row, and its rate is
+         * halved.
+         *
+         * @param retryAfterMillis how long the host asked to wait, or a
+         *     negative number if it did not say
+         */
+        public synchronized void throttle(long retryAfterMillis) {
+            GalleryMetrics.global().increment(GalleryMetrics.Counter.HTTP_THROTTLED);
+            long pause = retryAfterMillis >= 0 ? retryAfterMillis
+                : THROTTLE_MILLIS << Math.min(throttles, 6);
+            throttles++;
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(
+                Math.min(pause, MAX_PAUSE_MILLIS));
+            if (until - pausedUntil > 0) {
+                pausedUntil = until;
+            } // if
+            rate = Math.max(maxRate / 16, rate / 2);
+            tokens = 0;
+        } // throttle
+
+        /**
+         * Adds the tokens earned since the last refill, up to the size of
+         * the bucket.
+         *
+         * @param now the current {@link System#nanoTime()}
+         */
+        private void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * rate / 1e9);
+            refilledAt = now;
+        } // refill
+    } // Host
+
+} // RequestScheduler
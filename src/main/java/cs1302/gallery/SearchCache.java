@@ -0,0 +1,272 @@
+package cs1302.gallery;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A {@code SearchCache} remembers the artwork URLs found for recent searches.
+ * Entries are keyed by the normalized search term, the media type, the
+ * result limit and the page offset, and only hold the extracted URL lists.
+ * An entry younger than the time-to-live is returned as is. An older entry
+ * is still returned right away but is revalidated in the background, using
+ * a conditional request when the server sent an {@code ETag} or
+ * {@code Last-Modified} header. Entries past the maximum staleness are
+ * fetched again before returning. While a query is still being typed,
+ * {@link #peek} offers the cached answer of a related query without going
+ * to the server at all.
+ */
+public class SearchCache {
+
+    /** Default time-to-live in seconds; set with {@code -Dgallery.search.ttl}. */
+    static final int DEFAULT_TTL = Integer.getInteger("gallery.search.ttl", 300);
+
+    /** Default maximum staleness in seconds; set with {@code -Dgallery.search.maxStale}. */
+    static final int DEFAULT_MAX_STALE = Integer.getInteger("gallery.search.maxStale", 3600);
+
+    /** Maximum number of search pages remembered. */
+    static final int MAX_ENTRIES = 256;
+
+    private final ArtworkSource source;
+    private final long ttlMillis;
+    private final long maxStaleMillis;
+    private final LinkedHashMap<String, Entry> entries;
+    private final ExecutorService revalidator;
+
+    /**
+     * A remembered search along with when it was last confirmed.
+     */
+    private static class Entry {
+        final SearchResult result;
+        final long checkedAt;
+        boolean revalidating;
+
+        Entry(SearchResult result, long checkedAt) {
+            this.result = result;
+            this.checkedAt = checkedAt;
+        } // Entry
+    } // Entry
+
+    /**
+     * Constructs a {@code SearchCache} with the default time-to-live and
+     * maximum staleness.
+     *
+     * @param source the source searched on a miss or for revalidation
+     */
+    public SearchCache(ArtworkSource source) {
+        this(source, DEFAULT_TTL * 1000L, DEFAULT_MAX_STALE * 1000L);
+    } // SearchCache
+
+    /**
+     * Constructs a {@code SearchCache}.
+     *
+     * @param source the source searched on a miss or for revalidation
+     * @param ttlMillis how long an entry is returned without revalidation
+     * @param maxStaleMillis how long a stale entry may still be returned while it revalidates
+     */
+    public SearchCache(ArtworkSource source, long ttlMillis, long maxStaleMillis) {
+        this.source = source;
+        this.ttlMillis = ttlMillis;
+        this.maxStaleMillis = Math.max(ttlMillis, maxStaleMillis);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.revalidator = Executors.newSingleThreadExecutor(target -> {
+            Thread t = new Thread(target, "search-revalidate");
+            t.setDaemon(true);
+            return t;
+        });
+    } // SearchCache
+
+    /**
+     * Returns the artwork URLs for the first page of a search, from the cache
+     * when possible.
+     *
+     * @param term the search term
+     * @param media the media type
+     * @param limit the maximum number of results
+     * @return the artwork URLs in the order the server returned them
+     * @throws IOException if the search had to go to the server and failed
+     */
+    public List<String> get(String term, String media, int limit) throws IOException {
+        return getPage(term, media, limit, 0).urls;
+    } // get
+
+    /**
+     * Returns one page of a search, from the cache when possible.
+     *
+     * @param term the search term
+     * @param media the media type
+     * @param limit the maximum number of results per page
+     * @param offset the number of results before the page
+     * @return the page; its URL list is unmodifiable
+     * @throws IOException if the search had to go to the server and failed
+     */
+    public SearchResult getPage(String term, String media, int limit, int offset)
+        throws IOException {
+        String key = key(term, media, limit) + "\n" + offset;
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && now - entry.checkedAt < ttlMillis) {
+                return entry.result;
+            } // if
+            if (entry != null && now - entry.checkedAt < maxStaleMillis) {
+                // returns the stale answer and refreshes it in the background
+                if (!entry.revalidating) {
+                    entry.revalidating = true;
+                    final Entry stale = entry;
+                    revalidator.execute(() -> revalidate(key, term, media, limit, offset, stale));
+                } // if
+                return entry.result;
+            } // if
+        } // synchronized
+        return fetch(key, term, media, limit, offset, entry).result;
+    } // getPage
+
+    /**
+     * Returns the cached first page that best matches a query still being
+     * typed, without asking the server. The query itself is preferred, then
+     * the shortest cached query that starts with it, such as after deleting
+     * characters, then the longest cached query it starts with. Entries past
+     * the maximum staleness are ignored, and the recency order is unchanged.
+     *
+     * @param term the search term typed so far
+     * @param media the media type
+     * @param limit the maximum number of results per page
+     * @return the cached artwork URLs, or {@code null} if no related query is cached
+     */
+    public List<String> peek(String term, String media, int limit) {
+        String typed = normalize(term);
+        String suffix = "\n" + media + "\n" + limit + "\n0";
+        long now = System.currentTimeMillis();
+        List<String> longer = null;
+        int longerLength = Integer.MAX_VALUE;
+        List<String> shorter = null;
+        int shorterLength = 0;
+        synchronized (entries) {
+            // iterating leaves the access order alone, unlike get
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                String key = entry.getKey();
+                if (!key.endsWith(suffix) || now - entry.getValue().checkedAt >= maxStaleMillis) {
+                    continue;
+                } // if
+                String cached = key.substring(0, key.length() - suffix.length());
+                List<String> urls = entry.getValue().result.urls;
+                if (cached.equals(typed)) {
+                    return urls;
+                } else if (cached.startsWith(typed) && cached.length() < longerLength) {
+                    longer = urls;
+                    longerLength = cached.length();
+                } else if (typed.startsWith(cached) && cached.length() > shorterLength) {
+                    shorter = urls;
+                    shorterLength = cached.length();
+                } // if
+            } // for
+        } // synchronized
+        return longer != null ? longer : shorter;
+    } // peek
+
+    /**
+     * Refreshes a stale entry in the background. If the refresh fails, the
+     * stale entry stays until it passes the maximum staleness.
+     *
+     * @param key the cache key
+     * @param term the search term
+     * @param media the media type
+     * @param limit the maximum number of results
+     * @param offset the number of results before the page
+     * @param stale the stale entry
+     */
+    private void revalidate(String key, String term, String media, int limit, int offset,
+        Entry stale) {
+        // nobody is waiting on a refresh, so it yields to every other request
+        RequestScheduler.runAs(RequestScheduler.Priority.BACKGROUND, () -> {
+            try {
+                fetch(key, term, media, limit, offset, stale);
+            } catch (IOException e) {
+                synchronized (entries) {
+                    stale.revalidating = false;
+                } // synchronized
+            } // try
+        });
+    } // revalidate
+
+    /**
+     * Asks the server for a search and stores the answer. When an older
+     * entry is given, its validators are sent along and a "not modified"
+     * answer keeps its URLs.
+     *
+     * @param key the cache key
+     * @param term the search term
+     * @param media the media type
+     * @param limit the maximum number of results
+     * @param offset the number of results before the page
+     * @param old the previous entry, or {@code null}
+     * @return the new entry
+     * @throws IOException if the request fails
+     */
+    private Entry fetch(String key, String term, String media, int limit, int offset, Entry old)
+        throws IOException {
+        String etag = old != null ? old.result.etag : null;
+        String lastModified = old != null ? old.result.lastModified : null;
+        SearchResult answer;
+        try {
+            answer = source.search(term, media, limit, offset, etag, lastModified);
+        } catch (IOException e) {
+            GalleryMetrics.global().increment(GalleryMetrics.Counter.SEARCH_FAILURES);
+            throw e;
+        } // try
+        SearchResult result;
+        if (answer.notModified && old != null) {
+            // keeps the old URLs under the validators of the new answer
+            result = new SearchResult(old.result.urls, old.result.resultCount, answer.etag,
+                answer.lastModified, false);
+        } else {
+            result = new SearchResult(Collections.unmodifiableList(answer.urls),
+                answer.resultCount, answer.etag, answer.lastModified, false);
+        } // if
+        Entry fresh = new Entry(result, System.currentTimeMillis());
+        synchronized (entries) {
+            entries.put(key, fresh);
+            // forgets the least recently used search if there are too many
+            Iterator<String> eldest = entries.keySet().iterator();
+            if (entries.size() > MAX_ENTRIES) {
+                eldest.next();
+                eldest.remove();
+            } // if
+        } // synchronized
+        return fresh;
+    } // fetch
+
+    /**
+     * Returns the cache key of a search. The term is trimmed, lower-cased and
+     * has its inner whitespace collapsed, so queries that the server treats the
+     * same way share one entry.
+     *
+     * @param term the search term
+     * @param media the media type
+     * @param limit the maximum number of results
+     * @return the cache key
+     */
+    static String key(String term, String media, int limit) {
+        return normalize(term) + "\n" + media + "\n" + limit;
+    } // key
+
+    /**
+     * Normalizes a search term the way the server treats it: trimmed,
+     * lower-cased and with its inner whitespace collapsed.
+     *
+     * @param term the search term
+     * @return the normalized term
+     */
+    static String normalize(String term) {
+        return term.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    } // normalize
+
+} // SearchCache
@@ -0,0 +1,37 @@
+package cs1302.gallery;
+
+import java.util.List;
+
+/**
+ * A {@code SearchResult} is the answer to one page of a search. It holds the
+ * distinct artwork URLs in the order the server returned them, the number of
+ * results in the response, and the validators of the response that can be
+ * used to revalidate it later.
+ */
+public class SearchResult {
+
+    final List<String> urls;
+    final int resultCount;
+    final String etag;
+    final String lastModified;
+    final boolean notModified;
+
+    /**
+     * Constructs a {@code SearchResult}.
+     *
+     * @param urls the distinct artwork URLs, or an empty list if not modified
+     * @param resultCount the number of results read, or 0 if not modified
+     * @param etag the {@code ETag} header, or {@code null}
+     * @param lastModified the {@code Last-Modified} header, or {@code null}
+     * @param notModified whether the server answered 304 Not Modified
+     */
+    public SearchResult(List<String> urls, int resultCount, String etag, String lastModified,
+        boolean notModified) {
+        this.urls = urls;
+        this.resultCount = resultCount;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.notModified = notModified;
+    } // SearchResult
+
+} // SearchResult
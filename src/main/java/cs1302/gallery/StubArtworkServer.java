@@ -0,0 +1,433 @@
+package cs1302.gallery;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+import javax.imageio.ImageIO;
+
+/**
+ * A {@code StubArtworkServer} is a local stand-in for the iTunes Search API,
+ * so the gallery can be load-tested and benchmarked on a machine without
+ * network access. It answers {@code /search} with synthetic results in the
+ * same JSON format, and {@code /art/...} with generated PNG thumbnails. The
+ * answers only depend on the query, so every run sees the same data: each
+ * term has a fixed number of results, one in ten of which repeats the
+ * artwork of the one before it. Search results are gzip-compressed for
+ * clients that accept it. Latency, error rate and throughput can be set to
+ * mimic a slow or flaky server, and a request limit to mimic one that
+ * throttles its clients.
+ *
+ * <p>Run it with {@code --port}, {@code --results}, {@code --latency} (in
+ * milliseconds), {@code --errors} (a fraction of requests answered with
+ * 503), {@code --throughput} (bytes per second per response, 0 for
+ * unlimited) and {@code --limit} (requests answered per second, the rest
+ * with 429, 0 for unlimited), then start the gallery with
+ * {@code -Dgallery.endpoint} set to the printed search endpoint. Launch it
+ * with {@code -Dsun.net.httpserver.nodelay=true}, or Nagle's algorithm adds
+ * about 40 ms to every response.
+ */
+public class StubArtworkServer {
+
+    /** Width and height of a generated thumbnail whose path names no size. */
+    static final int THUMBNAIL_SIZE = 100;
+
+    /** Largest thumbnail drawn, in pixels. */
+    static final int MAX_SIZE = 1200;
+
+    /** Size of each write when throughput is limited, in bytes. */
+    static final int CHUNK_SIZE = 4 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService pool;
+    private final int results;
+    private final long latencyMillis;
+    private final double errorRate;
+    private final long bytesPerSecond;
+    private final Map<String, byte[]> thumbnails;
+    private volatile int limit;
+    private long windowStart;
+    private int windowRequests;
+
+    /**
+     * Constructs a {@code StubArtworkServer} bound to the loopback address.
+     * It does not answer requests until it is started.
+     *
+     * @param port the port to listen on, or 0 for any free port
+     * @param results the number of results every search term has
+     * @param latencyMillis the delay before every response, in milliseconds
+     * @param errorRate the fraction of requests answered with an error
+     * @param bytesPerSecond the rate at which each response body is written, or 0 for unlimited
+     * @throws IOException if the server cannot be bound
+     */
+    public StubArtworkServer(int port, int results, long latencyMillis, double errorRate,
+        long bytesPerSecond) throws IOException {
+        this.results = results;
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+        this.bytesPerSecond = bytesPerSecond;
+        this.thumbnails = new ConcurrentHashMap<>();
+        this.server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        AtomicInteger threadCount = new AtomicInteger();
+        // slow responses must not hold up the others, so every request gets a thread
+        this.pool = Executors.newCachedThreadPool(target -> {
+            Thread t = new Thread(target, "stub-server-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(pool);
+        server.createContext("/search", exchange -> handle(exchange, this::search));
+        server.createContext("/art/", exchange -> handle(exchange, this::artwork));
+    } // StubArtworkServer
+
+    /**
+     * Starts answering requests.
+     */
+    public void start() {
+        server.start();
+    } // start
+
+    /**
+     * Stops answering requests and closes the port.
+     */
+    public void stop() {
+        server.stop(0);
+        pool.shutdownNow();
+    } // stop
+
+    /**
+     * Limits the requests answered per second. Requests past the limit are
+     * answered with 429 and a {@code Retry-After} of one second, like a
+     * server that throttles its clients.
+     *
+     * @param perSecond the number of requests answered per second, or 0 for unlimited
+     */
+    public void setLimit(int perSecond) {
+        this.limit = perSecond;
+    } // setLimit
+
+    /**
+     * Counts a request against the limit.
+     *
+     * @return whether the request is over the limit of the current second
+     */
+    private synchronized boolean overLimit() {
+        if (limit <= 0) {
+            return false;
+        } // if
+        long now = System.currentTimeMillis();
+        if (now - windowStart >= 1000) {
+            windowStart = now;
+            windowRequests = 0;
+        } // if
+        return ++windowRequests > limit;
+    } // overLimit
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    } // getPort
+
+    /**
+     * Returns the URL of the search endpoint, to be passed to an
+     * {@link ItunesSource} or set as {@code -Dgallery.endpoint}.
+     *
+     * @return the search endpoint
+     */
+    public String getEndpoint() {
+        return "http://" + server.getAddress().getHostString() + ":" + getPort() + "/search";
+    } // getEndpoint
+
+    /**
+     * A request handler that produces a response body, or {@code null} when
+     * the response has already been sent.
+     */
+    @FunctionalInterface
+    private interface Handler {
+
+        /**
+         * Answers a request.
+         *
+         * @param exchange the request
+         * @return the response body, or {@code null} if the response was sent
+         * @throws IOException if the response cannot be sent
+         */
+        byte[] answer(HttpExchange exchange) throws IOException;
+    } // Handler
+
+    /**
+     * Answers a request after the configured latency, failing it at the
+     * configured error rate and writing the body at the configured throughput.
+     *
+     * @param exchange the request
+     * @param handler produces the response body
+     * @throws IOException if the response cannot be sent
+     */
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        try {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            } // if
+            if (overLimit()) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                exchange.sendResponseHeaders(429, -1);
+                return;
+            } // if
+            if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            } // if
+            byte[] body = handler.answer(exchange);
+            if (body == null) {
+                return;
+            } // if
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                write(out, body);
+            } // try
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        } // try
+    } // handle
+
+    /**
+     * Writes a response body, in chunks paced to the configured throughput
+     * if there is one.
+     *
+     * @param out the response stream
+     * @param body the response body
+     * @throws IOException if the body cannot be written
+     * @throws InterruptedException if interrupted while pacing
+     */
+    private void write(OutputStream out, byte[] body) throws IOException, InterruptedException {
+        if (bytesPerSecond <= 0) {
+            out.write(body);
+            return;
+        } // if
+        for (int from = 0; from < body.length; from += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, body.length - from);
+            out.write(body, from, length);
+            out.flush();
+            Thread.sleep(length * 1000L / bytesPerSecond);
+        } // for
+    } // write
+
+    /**
+     * Answers a search with one page of synthetic results. The response
+     * carries an {@code ETag}, and a request that already has it is answered
+     * with 304 Not Modified. The results are compressed if the client
+     * accepts gzip.
+     *
+     * @param exchange the request
+     * @return the JSON response, or {@code null} if not modified
+     * @throws IOException if the response cannot be sent
+     */
+    private byte[] search(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String term = query.getOrDefault("term", "");
+        int limit = parseInt(query.get("limit"), 50);
+        int offset = parseInt(query.get("offset"), 0);
+        String termId = Integer.toHexString(term.trim().toLowerCase().hashCode());
+        String etag = "\"" + termId + "-" + results + "-" + limit + "-" + offset + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            return null;
+        } // if
+
+        int end = Math.max(offset, Math.min(results, offset + limit));
+        String base = "http://" + exchange.getLocalAddress().getHostString() + ":" + getPort()
+            + "/art/" + termId + "/";
+        StringBuilder json = new StringBuilder(64 + (end - offset) * 160);
+        json.append("{\"resultCount\":").append(end - offset).append(",\"results\":[");
+        for (int i = offset; i < end; i++) {
+            // one in ten results repeats the artwork of the one before it
+            int art = i % 10 == 9 ? i - 1 : i;
+            if (i > offset) {
+                json.append(',');
+            } // if
+            json.append("{\"wrapperType\":\"track\",\"kind\":\"song\",\"trackId\":").append(i)
+                .append(",\"trackName\":\"Track ").append(i)
+                .append("\",\"artworkUrl100\":\"").append(base).append(art)
+                .append("/100x100bb.png\"}");
+        } // for
+        json.append("]}");
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (accepted == null || !accepted.contains("gzip")) {
+            return body;
+        } // if
+        exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(body);
+        } // try
+        return compressed.toByteArray();
+    } // search
+
+    /**
+     * Answers an artwork request with a PNG thumbnail. Each thumbnail is
+     * generated once from its path and then kept in memory.
+     *
+     * @param exchange the request
+     * @return the PNG bytes
+     */
+    private byte[] artwork(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getPath();
+        exchange.getResponseHeaders().set("Content-Type", "image/png");
+        return thumbnails.computeIfAbsent(path, StubArtworkServer::thumbnail);
+    } // artwork
+
+    /**
+     * Draws a thumbnail whose colors are derived from its path, so that
+     * different artwork looks different. Like the real server, it is drawn
+     * at the size named by the last path segment, such as
+     * {@code 200x200bb.png}, up to {@link #MAX_SIZE}.
+     *
+     * @param path the path of the artwork
+     * @return the PNG bytes
+     */
+    static byte[] thumbnail(String path) {
+        // the same artwork looks the same at every size
+        int slash = path.lastIndexOf('/');
+        int hash = path.substring(0, Math.max(0, slash)).hashCode();
+        int size = THUMBNAIL_SIZE;
+        if (UrlDeduplicator.isSizeSegment(path, slash + 1, path.length())) {
+            int x = UrlDeduplicator.skipDigits(path, slash + 1, path.length());
+            // more than four digits is more than the maximum anyway
+            size = x - slash - 1 > 4 ? MAX_SIZE
+                : Math.min(MAX_SIZE, Math.max(1, Integer.parseInt(path.substring(slash + 1, x))));
+        } // if
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(hash & 0xFFFFFF));
+        g.fillRect(0, 0, size, size);
+        g.setColor(new Color(~hash & 0xFFFFFF));
+        int inset = size / 4 + (hash >>> 24) % Math.max(1, size / 8);
+        g.fillOval(inset, inset, size - 2 * inset, size - 2 * inset);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } // try
+        return out.toByteArray();
+    } // thumbnail
+
+    /**
+     * Splits a raw query string into its decoded parameters.
+     *
+     * @param rawQuery the raw query, or {@code null}
+     * @return the parameters by name
+     */
+    static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        } // if
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                URLDecoder.decode(value, StandardCharsets.UTF_8));
+        } // for
+        return params;
+    } // parseQuery
+
+    /**
+     * Parses a number, falling back to a default if it is missing or invalid.
+     *
+     * @param value the text to parse, or {@code null}
+     * @param fallback the default
+     * @return the number
+     */
+    private static int parseInt(String value, int fallback) {
+        try {
+            return value == null ? fallback : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        } // try
+    } // parseInt
+
+    /**
+     * Starts a stand-in server and keeps it running until the process is
+     * stopped.
+     *
+     * @param args {@code --port}, {@code --results}, {@code --latency},
+     *     {@code --errors}, {@code --throughput} and {@code --limit}, each
+     *     followed by a value
+     * @throws IOException if the server cannot be started
+     */
+    public static void main(String[] args) throws IOException {
+        int port = 8080;
+        int results = 2000;
+        long latency = 0;
+        double errors = 0;
+        long throughput = 0;
+        int limit = 0;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+            case "--port":
+                port = Integer.parseInt(args[i + 1]);
+                break;
+            case "--results":
+                results = Integer.parseInt(args[i + 1]);
+                break;
+            case "--latency":
+                latency = Long.parseLong(args[i + 1]);
+                break;
+            case "--errors":
+                errors = Double.parseDouble(args[i + 1]);
+                break;
+            case "--throughput":
+                throughput = Long.parseLong(args[i + 1]);
+                break;
+            case "--limit":
+                limit = Integer.parseInt(args[i + 1]);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown option: " + args[i]);
+            } // switch
+        } // for
+        // the server threads are daemons, so main keeps the process alive
+        System.setProperty("java.awt.headless", "true");
+        StubArtworkServer stub = new StubArtworkServer(port, results, latency, errors, throughput);
+        stub.setLimit(limit);
+        stub.start();
+        System.out.println("Serving " + results + " results per term at " + stub.getEndpoint());
+        System.out.println("Run the gallery with -Dgallery.endpoint=" + stub.getEndpoint());
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            stub.stop();
+        } // try
+    } // main
+
+} // StubArtworkServer
@@ -0,0 +1,152 @@
+package cs1302.gallery;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@code TaskScheduler} runs the background work of the application. On Java
+ * versions that support virtual threads, every task gets its own virtual thread.
+ * Otherwise tasks share a small bounded pool of named daemon threads. Tasks can
+ * be submitted to a named lane, in which case only the latest task of the lane
+ * is wanted: submitting a new task cancels the one still running, while
+ * submitting an identical task just returns the one already in flight.
+ */
+public class TaskScheduler {
+
+    /** Number of platform threads used when virtual threads are not available. */
+    static final int POOL_SIZE = Integer.getInteger("gallery.tasks", 4);
+
+    private final ExecutorService executor;
+    private final Map<String, Lane> lanes;
+
+    /**
+     * The task currently running in a lane and the key it was submitted with.
+     */
+    private static class Lane {
+        final String key;
+        final Future<?> task;
+
+        Lane(String key, Future<?> task) {
+            this.key = key;
+            this.task = task;
+        } // Lane
+    } // Lane
+
+    /**
+     * Constructs a {@code TaskScheduler}, using virtual threads if the running
+     * Java version has them.
+     */
+    public TaskScheduler() {
+        ExecutorService virtual = virtualThreadExecutor();
+        this.executor = virtual != null ? virtual : boundedPool(POOL_SIZE);
+        this.lanes = new HashMap<>();
+    } // TaskScheduler
+
+    /**
+     * Submits a task.
+     *
+     * @param task the task to run
+     * @return the pending task
+     */
+    public Future<?> submit(Runnable task) {
+        return executor.submit(task);
+    } // submit
+
+    /**
+     * Submits a task to a lane, superseding the task already in it. If the task
+     * in the lane has the same key and is still running, it is returned instead
+     * and nothing new is started. Otherwise the running task is cancelled by
+     * interrupting it, and the new task is started.
+     *
+     * @param lane the name of the lane
+     * @param key identifies what the task does, such as a normalized query
+     * @param task the task to run
+     * @return the pending task of the lane
+     */
+    public synchronized Future<?> submitLatest(String lane, String key, Runnable task) {
+        Lane current = lanes.get(lane);
+        if (current != null && !current.task.isDone()) {
+            if (current.key.equals(key)) {
+                return current.task;
+            } // if
+            current.task.cancel(true);
+        } // if
+        Future<?> next = executor.submit(task);
+        lanes.put(lane, new Lane(key, next));
+        return next;
+    } // submitLatest
+
+    /**
+     * Cancels the task running in a lane, unless it was submitted with the
+     * given key and so is still wanted.
+     *
+     * @param lane the name of the lane
+     * @param key identifies the task to keep, such as a normalized query
+     * @return whether a task with the given key is still running in the lane
+     */
+    public synchronized boolean cancelLatest(String lane, String key) {
+        Lane current = lanes.get(lane);
+        if (current == null || current.task.isDone()) {
+            return false;
+        } // if
+        if (current.key.equals(key)) {
+            return true;
+        } // if
+        current.task.cancel(true);
+        return false;
+    } // cancelLatest
+
+    /**
+     * Cancels every running task and stops accepting new ones. Waits briefly
+     * for the tasks to notice.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } // try
+    } // shutdown
+
+    /**
+     * Returns an executor that starts a virtual thread per task, if the running
+     * Java version supports them. It is looked up reflectively so the
+     * application still compiles and runs on Java 11.
+     *
+     * @return the executor, or {@code null} if virtual threads are not available
+     */
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        } // try
+    } // virtualThreadExecutor
+
+    /**
+     * Returns a fixed pool of named daemon threads.
+     *
+     * @param size the number of threads
+     * @return the pool
+     */
+    private static ExecutorService boundedPool(int size) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(size, size, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            target -> {
+                Thread t = new Thread(target, "gallery-task-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+    } // boundedPool
+
+} // TaskScheduler
@@ -3,27 +3,48 @@ package cs1302.gallery;
 import javafx.scene.control.ToolBar;
 import javafx.scene.control.Label;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.TextField;
 import javafx.scene.control.Separator;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
-import javafx.scene.image.ImageView;
-import javafx.application.Platform;
+import javafx.animation.Animation;
 import javafx.animation.Timeline;
 import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
 import javafx.util.Duration;
 
 /**
  * Creates a {@code Toolbar} that represents a {@code ToolBar}.
  * It is used to allow the user to play and pause random image
  * replacement. It is also used to enter a search query for the
- * iTunes Search API and allow the user to update the displayed images.
+ * iTunes Search API and allow the user to update the displayed images,
+ * either with the update button or, if enabled, as the user types.
  */
 public class Toolbar extends ToolBar {
+
+    /** Milliseconds between random replacements; set with {@code -Dgallery.replace.millis}. */
+    static final int REPLACE_MILLIS = Integer.getInteger("gallery.replace.millis", 2000);
+
+    /** Whether replaced images cross-fade; disable with {@code -Dgallery.crossfade=false}. */
+    static final boolean CROSSFADE =
+        Boolean.parseBoolean(System.getProperty("gallery.crossfade", "true"));
+
+    /** Whether the gallery searches as the user types; set with {@code -Dgallery.live}. */
+    static final boolean LIVE = Boolean.parseBoolean(System.getProperty("gallery.live", "false"));
+
+    /** Milliseconds of typing pause before a search; set with {@code -Dgallery.live.millis}. */
+    static final int DEBOUNCE_MILLIS = Integer.getInteger("gallery.live.millis", 400);
+
+    /** Shortest query searched as the user types. */
+    static final int MIN_LENGTH = 2;
+
     Button randomReplace;
     Label queryLabel;
     TextField search;
     Button updateImages;
+    CheckBox liveSearch;
+    PauseTransition debounce;
     KeyFrame keyFrame;
     Timeline timeline;
     private GalleryApp app;
@@ -33,7 +54,8 @@ public class Toolbar extends ToolBar {
      * a button that allows the user to play/pause random image
      * replacement. It also consists of a textfield that allows the
      * user to input a search query. The user can update the displayed
-     * images using the update button.
+     * images using the update button, by pressing Enter, or by pausing
+     * while typing if search as you type is checked.
      *
      * @param app the current application object
      */
@@ -45,92 +67,124 @@ public class Toolbar extends ToolBar {
         queryLabel = new Label("Search Query:");
         search = new TextField("pop");
         updateImages = new Button("Update Images");
+        liveSearch = new CheckBox("Search as you type");
+        liveSearch.setSelected(LIVE);
 
         // event handler to update images in the tile pane
         EventHandler<ActionEvent> handleUpdateImages = event -> {
-            app.runNow(() -> updateImages(search.getText()));
+            debounce.stop();
+            updateImages(search.getText());
         };
-        // sets update handler to the update button
+        // sets update handler to the update button and the Enter key
         updateImages.setOnAction(handleUpdateImages);
+        search.setOnAction(handleUpdateImages);
+
+        // searches once typing has paused, instead of once per keystroke
+        debounce = new PauseTransition(Duration.millis(DEBOUNCE_MILLIS));
+        debounce.setOnFinished(event -> updateImages(search.getText()));
+        search.textProperty().addListener((observable, oldText, newText) -> typed(newText));
 
         // event handler to acquire random images and to place in keyframe
         EventHandler<ActionEvent> randomImages = event -> {
             randomReplacement();
         };
 
-        // sets up the timeline to occur every 2 seconds indefinitely
-        keyFrame = new KeyFrame(Duration.seconds(2), randomImages);
+        // sets up the timeline to occur every REPLACE_MILLIS indefinitely
+        keyFrame = new KeyFrame(Duration.millis(REPLACE_MILLIS), randomImages);
         timeline = new Timeline();
         timeline.setCycleCount(Timeline.INDEFINITE);
-        timeline.getKeyFrames().add(keyFrame);
+        // installs the keyframe and the matching cross-fade
+        setReplacementInterval(keyFrame.getTime());
 
         // event handler to play/pause the timeline using the button
         EventHandler<ActionEvent> handleRandomImages = event -> {
-            app.runNow(() -> handleReplacement());
+            handleReplacement();
         };
         // sets the random handler to the play/pause button
         randomReplace.setOnAction(handleRandomImages);
 
-        this.getItems().addAll(randomReplace, new Separator(), queryLabel, search, updateImages);
+        this.getItems().addAll(randomReplace, new Separator(), queryLabel, search, updateImages,
+            liveSearch);
     } // Toolbar
 
     /**
-     * Updates the images in the tilepane. Creates a new thread
-     * and uses a search query to start loading artwork images into
-     * the tilepane.
+     * Updates the images in the tilepane. Schedules a background task
+     * that uses a search query to start loading artwork images into
+     * the tilepane, superseding any load still in progress.
      *
      * @param searchQuery the query to the iTunes Search API
      */
     private void updateImages(String searchQuery) {
-        app.contentLoader.loadContent(searchQuery);
+        app.load(searchQuery);
     } // updateImages
 
     /**
-     * Randomly replaces images on the tilepane. It randomly chooses an
-     * imageview from the displayed and hidden imageview arrays.
-     * It then swaps the two images so that the hidden imageview
-     * appears on the tilepane.
+     * Called on the JavaFX Application Thread whenever the query changes. If
+     * search as you type is on, cached artwork of the query is shown right
+     * away and the search is restarted to wait for the next pause in typing.
+     * Queries shorter than {@link #MIN_LENGTH} are not searched.
+     *
+     * @param text the query typed so far
+     */
+    private void typed(String text) {
+        if (!liveSearch.isSelected()) {
+            return;
+        } // if
+        if (text.trim().length() < MIN_LENGTH) {
+            debounce.stop();
+            return;
+        } // if
+        app.preview(text);
+        debounce.playFromStart();
+    } // typed
+
+    /**
+     * Randomly replaces an image on the tilepane. A random displayed
+     * image is swapped in place with the next prefetched image, so only one
+     * tile changes. Runs on the JavaFX Application Thread like every
+     * other change to the tiles.
      */
     private void randomReplacement() {
-        // chooses a random integers for the displayed and hidden imageviews
-        int display = (int) (Math.random() * 20);
-        int hide = (int) (Math.random() * (app.contentLoader.urlCount - 20));
-
-        // stores the displayed imageview
-        ImageView displayedImage = app.contentLoader.displayedImages[display];
-        // sets the current displayed imageview to the hidden imageview
-        app.contentLoader.displayedImages[display] = app.contentLoader.hiddenImages[hide];
-        // sets the hidden imageview to the stored displayed imageview
-        app.contentLoader.hiddenImages[hide] = displayedImage;
-
-        // clears the tilepane of previous imageviews
-        app.contentLoader.tile.getChildren().clear();
-        // updates the tilepane with the displayed imageviews
-        for (int i = 0; i < 20; i++) {
-            app.contentLoader.tile.getChildren().add(app.contentLoader.displayedImages[i]);
-        } // for
+        app.contentLoader.replaceRandomTile();
     } // randomReplacement
 
+    /**
+     * Sets how often random replacement swaps an image. The cross-fade,
+     * if enabled, takes up to 40% of the interval and at most 300 milliseconds.
+     * Must be called on the JavaFX Application Thread.
+     *
+     * @param interval time between two replacements
+     */
+    public void setReplacementInterval(Duration interval) {
+        boolean running = timeline.getStatus() == Animation.Status.RUNNING;
+        timeline.stop();
+        keyFrame = new KeyFrame(interval, keyFrame.getOnFinished());
+        timeline.getKeyFrames().setAll(keyFrame);
+        Duration fade = CROSSFADE ? Duration.millis(Math.min(300, interval.toMillis() * 0.4))
+            : Duration.ZERO;
+        app.contentLoader.setFadeDuration(fade);
+        if (running) {
+            timeline.play();
+        } // if
+    } // setReplacementInterval
+
     /**
      * Provides functionality for the play/pause button.
      * Depending on the state of the button, the method will
      * either play or pause the timeline object and change
-     * the button text to the other state.
+     * the button text to the other state. It runs on the
+     * JavaFX Application Thread since it only touches the UI.
      */
     private void handleReplacement() {
         // case if the button currently displays Play
         if (randomReplace.getText().equals("Play")) {
-            Platform.runLater(() -> {
-                // change text to Pause
-                randomReplace.setText("Pause");
-            });
+            // change text to Pause
+            randomReplace.setText("Pause");
             // play the timeline
             timeline.play();
         } else { // case if the button currently displays Pause
-            Platform.runLater(() -> {
-                // change text to Play
-                randomReplace.setText("Play");
-            });
+            // change text to Play
+            randomReplace.setText("Play");
             // pause the timeline
             timeline.pause();
         } // if
@@ -0,0 +1,160 @@
+package cs1302.gallery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A {@code UrlDeduplicator} drops repeated artwork URLs while keeping the
+ * order in which URLs were first seen. Each URL is checked against a hash set,
+ * so de-duplicating {@code n} URLs takes linear time. Optionally, URLs are
+ * compared by a normalized key that ignores the query string, the fragment and
+ * the size suffix of iTunes artwork URLs (such as {@code 100x100bb.jpg}), so
+ * different renditions of the same artwork count as duplicates.
+ */
+public class UrlDeduplicator {
+
+    private final boolean normalize;
+    private final HashSet<String> seen;
+    private final ArrayList<String> urls;
+
+    /**
+     * Constructs an empty {@code UrlDeduplicator}.
+     *
+     * @param normalize whether URLs are compared by their normalized key
+     * @param expected the expected number of URLs, used to size the tables
+     */
+    public UrlDeduplicator(boolean normalize, int expected) {
+        this.normalize = normalize;
+        this.seen = new HashSet<>(Math.max(16, (int) (expected / 0.75f) + 1));
+        this.urls = new ArrayList<>(expected);
+    } // UrlDeduplicator
+
+    /**
+     * Adds a URL unless an equal one was added before. {@code null} URLs are ignored.
+     *
+     * @param url the URL to add
+     * @return {@code true} if the URL was new and has been added
+     */
+    public boolean add(String url) {
+        if (url == null) {
+            return false;
+        } // if
+        if (seen.add(normalize ? key(url) : url)) {
+            urls.add(url);
+            return true;
+        } // if
+        return false;
+    } // add
+
+    /**
+     * Returns the number of distinct URLs added so far.
+     *
+     * @return the distinct URL count
+     */
+    public int size() {
+        return urls.size();
+    } // size
+
+    /**
+     * Returns the distinct URLs in the order they were first added.
+     *
+     * @return a new list of the distinct URLs
+     */
+    public List<String> toList() {
+        return new ArrayList<>(urls);
+    } // toList
+
+    /**
+     * Returns the distinct URLs of a collection in their original order.
+     *
+     * @param all the URLs, possibly with repeats
+     * @param normalize whether URLs are compared by their normalized key
+     * @return the distinct URLs
+     */
+    public static List<String> distinct(Collection<String> all, boolean normalize) {
+        UrlDeduplicator dedup = new UrlDeduplicator(normalize, all.size());
+        for (String url : all) {
+            dedup.add(url);
+        } // for
+        return dedup.urls;
+    } // distinct
+
+    /**
+     * Returns the normalized key of a URL. The query string and fragment are
+     * dropped, and a last path segment made of a {@code WIDTHxHEIGHT} size
+     * followed by an optional suffix and an extension is dropped as well.
+     * A URL that needs no normalization is returned as is.
+     *
+     * @param url the URL
+     * @return its normalized key
+     */
+    static String key(String url) {
+        int end = pathEnd(url);
+        int slash = url.lastIndexOf('/', end - 1);
+        if (slash >= 0 && isSizeSegment(url, slash + 1, end)) {
+            end = slash + 1;
+        } // if
+        return end == url.length() ? url : url.substring(0, end);
+    } // key
+
+    /**
+     * Returns where the path of a URL ends, which is before the query string
+     * or fragment if there is one.
+     *
+     * @param url the URL
+     * @return the index after the last character of the path
+     */
+    static int pathEnd(String url) {
+        // cuts off the query string or fragment
+        int end = url.length();
+        for (int i = 0; i < end; i++) {
+            char c = url.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+            } // if
+        } // for
+        return end;
+    } // pathEnd
+
+    /**
+     * Checks whether a path segment looks like an artwork size, such as
+     * {@code 100x100bb.jpg} or {@code 600x600.png}.
+     *
+     * @param url the URL holding the segment
+     * @param start index of the first character of the segment
+     * @param end index after the last character of the segment
+     * @return whether the segment is a size segment
+     */
+    static boolean isSizeSegment(String url, int start, int end) {
+        int i = skipDigits(url, start, end);
+        if (i == start || i >= end || url.charAt(i) != 'x') {
+            return false;
+        } // if
+        int j = skipDigits(url, i + 1, end);
+        if (j == i + 1) {
+            return false;
+        } // if
+        // allows a suffix such as "bb" or "-999" before the extension
+        int dot = url.lastIndexOf('.', end - 1);
+        return dot >= j && dot < end - 1;
+    } // isSizeSegment
+
+    /**
+     * Returns the index of the first non-digit at or after {@code from}.
+     *
+     * @param url the string to scan
+     * @param from where to start
+     * @param end where to stop
+     * @return the index of the first non-digit, or {@code end}
+     */
+    static int skipDigits(String url, int from, int end) {
+        int i = from;
+        while (i < end && Character.isDigit(url.charAt(i))) {
+            i++;
+        } // while
+        return i;
+    } // skipDigits
+
+} // UrlDeduplicator